@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// throughput and allocation of each scanner and parser phase over generated corpora
+public class Benchmarks {
+    private static final String[] DEFAULT_SIZES = {"1k", "64k", "1m"};
+
+    private final long warmupMillis;
+    private final long measureMillis;
+    private final int iterations;
+    private final com.sun.management.ThreadMXBean threads;
+
+    // keeps the JIT from dropping the measured work
+    private static volatile int sink;
+
+    public Benchmarks(long warmupMillis, long measureMillis, int iterations) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+        this.iterations = iterations;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.threads = (com.sun.management.ThreadMXBean) bean;
+            this.threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+    }
+
+    // usage: Benchmarks [-s 1k,64k,1m] [-seed n] [-f csv|json] [-o results-file] [-d corpus-dir]
+    //                   [-w warmup-ms] [-t iteration-ms] [-i iterations] [benchmark...]
+    public static void main(String[] args) throws Exception {
+        String[] sizes = DEFAULT_SIZES;
+        long seed = 42;
+        boolean json = false;
+        Path results = null;
+        Path corpusDir = Paths.get(System.getProperty("java.io.tmpdir"), "vc-corpus");
+        long warmup = 1000;
+        long measure = 1000;
+        int iterations = 5;
+        List<String> selected = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if (option.equals("-s") && hasValue) {
+                sizes = args[++i].split(",");
+            } else if (option.equals("-seed") && hasValue) {
+                seed = Long.parseLong(args[++i]);
+            } else if (option.equals("-f") && hasValue) {
+                json = args[++i].equals("json");
+            } else if (option.equals("-o") && hasValue) {
+                results = Paths.get(args[++i]);
+            } else if (option.equals("-d") && hasValue) {
+                corpusDir = Paths.get(args[++i]);
+            } else if (option.equals("-w") && hasValue) {
+                warmup = Long.parseLong(args[++i]);
+            } else if (option.equals("-t") && hasValue) {
+                measure = Long.parseLong(args[++i]);
+            } else if (option.equals("-i") && hasValue) {
+                iterations = Integer.parseInt(args[++i]);
+            } else {
+                selected.add(option);
+            }
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<>();
+        for (Benchmark benchmark : all()) {
+            if (selected.isEmpty() || selected.contains(benchmark.name)) {
+                benchmarks.add(benchmark);
+            }
+        }
+        if (benchmarks.isEmpty()) {
+            System.out.println("Unknown benchmark, choose from " + Arrays.toString(names()));
+            return;
+        }
+
+        PrintStream out = results == null
+                ? System.out
+                : new PrintStream(Files.newOutputStream(results), true, "UTF-8");
+        Benchmarks runner = new Benchmarks(warmup, measure, iterations);
+        List<Result> rows = new ArrayList<>();
+        if (!json) {
+            out.println(Result.CSV_HEADER);
+        }
+        for (String size : sizes) {
+            for (Benchmark benchmark : benchmarks) {
+                Path corpus = corpus(corpusDir, CorpusGenerator.parseSize(size), seed, benchmark.shape);
+                CharSequence source = SourceFile.read(corpus);
+                Result result = runner.run(benchmark, source, seed);
+                rows.add(result);
+                if (!json) {
+                    out.println(result.toCsv());
+                }
+            }
+        }
+        if (json) {
+            out.println("[");
+            for (int i = 0; i < rows.size(); i++) {
+                out.println("  " + rows.get(i).toJson() + (i + 1 < rows.size() ? "," : ""));
+            }
+            out.println("]");
+        }
+        if (out != System.out) {
+            out.close();
+        }
+    }
+
+    // generated corpora are kept on disk so large sizes are only written once
+    static Path corpus(Path directory, long bytes, long seed) throws IOException {
+        return corpus(directory, bytes, seed, CorpusGenerator.Shape.PARSEABLE);
+    }
+
+    static Path corpus(Path directory, long bytes, long seed, CorpusGenerator.Shape shape) throws IOException {
+        Files.createDirectories(directory);
+        String suffix = shape == CorpusGenerator.Shape.PARSEABLE ? "" : "-" + shape.name().toLowerCase();
+        Path file = directory.resolve("vc-" + bytes + "-" + seed + suffix + ".vc");
+        if (!Files.exists(file)) {
+            Path partial = directory.resolve(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+                new CorpusGenerator(seed, shape, writer).write(bytes);
+            }
+            Files.move(partial, file);
+        }
+        return file;
+    }
+
+    // the named benchmark set up on its corpus, for the JMH module: a JMH benchmark cannot be in the default
+    // package, so it finds this method by reflection and only sees java types
+    public static Callable<Object> prepare(String name, String size, long seed, String corpusDir) throws Exception {
+        for (Benchmark benchmark : all()) {
+            if (benchmark.name.equals(name)) {
+                Path corpus = corpus(Paths.get(corpusDir), CorpusGenerator.parseSize(size), seed, benchmark.shape);
+                Object state = benchmark.setup.prepare(SourceFile.read(corpus));
+                return () -> benchmark.operation.run(state);
+            }
+        }
+        throw new IllegalArgumentException("Unknown benchmark " + name + ", choose from " + Arrays.toString(names()));
+    }
+
+    static List<Benchmark> all() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.add(new Benchmark("transition", source -> source, state -> {
+            // runs the DFA over every char, restarting after each reject
+            CharSequence source = (CharSequence) state;
+            Automaton automaton = Automaton.INSTANCE;
+            State.STATE current = State.STATE.s0;
+            int accepted = 0;
+            for (int i = 0; i < source.length(); i++) {
+                current = automaton.exercuteTransition(current, source.charAt(i));
+                if (current == State.STATE.InvalidState) {
+                    current = State.STATE.s0;
+                } else {
+                    accepted++;
+                }
+            }
+            return accepted;
+        }));
+        benchmarks.add(new Benchmark("scan", source -> source,
+                state -> new Controller((CharSequence) state).scanTokens().size()));
+        // mostly comments and indentation, see CorpusGenerator.Shape.COMMENTED
+        benchmarks.add(new Benchmark("scan-commented", CorpusGenerator.Shape.COMMENTED, source -> source,
+                state -> new Controller((CharSequence) state).scanTokens().size()));
+        // the same input as a String instead of the mapped bytes
+        benchmarks.add(new Benchmark("scan-commented-string", CorpusGenerator.Shape.COMMENTED,
+                CharSequence::toString, state -> new Controller((CharSequence) state).scanTokens().size()));
+        // mostly ASCII UTF-8, see CorpusGenerator.Shape.UNICODE, scanned as bytes and decoded first, both from
+        // the same bytes and including the UTF-8 check or decoding
+        benchmarks.add(new Benchmark("scan-utf8", CorpusGenerator.Shape.UNICODE, Benchmarks::utf8,
+                state -> new Controller(Utf8Sequence.of(((ByteBuffer) state).duplicate())).scanTokens().size()));
+        benchmarks.add(new Benchmark("scan-utf8-decoded", CorpusGenerator.Shape.UNICODE, Benchmarks::utf8,
+                state -> new Controller(StandardCharsets.UTF_8.decode(((ByteBuffer) state).duplicate()))
+                        .scanTokens().size()));
+        benchmarks.add(new Benchmark("nextToken", source -> source, state -> {
+            Controller controller = new Controller((CharSequence) state);
+            controller.scanTokens();
+            return drain(controller);
+        }));
+        benchmarks.add(new Benchmark("nextToken-stream", CharSequence::toString,
+                state -> drain(new Controller(new StringReader((String) state)))));
+        benchmarks.add(new Benchmark("parse", source -> new Controller(source).scan(),
+                state -> {
+                    @SuppressWarnings("unchecked")
+                    List<Token> tokens = (List<Token>) state;
+                    return new Parser(new TokenStream(tokens)).parseProgram();
+                }));
+        benchmarks.add(new Benchmark("scan+parse", source -> source, state -> {
+            Controller controller = new Controller((CharSequence) state);
+            controller.scanTokens();
+            return new Parser(controller).parseTree();
+        }));
+        // the lexer's allocation happens on its own thread and is not counted
+        benchmarks.add(new Benchmark("scan+parse-pipelined", source -> source, state -> {
+            try (TokenPipe pipe = TokenPipe.start(new Controller((CharSequence) state))) {
+                return new Parser(new TokenStream(pipe)).parseTree();
+            }
+        }));
+        benchmarks.add(new Benchmark("toString",
+                source -> new Parser(new TokenStream(new Controller(source).scan())).parseProgram(),
+                state -> state.toString().length()));
+        return benchmarks;
+    }
+
+    static String[] names() {
+        List<Benchmark> benchmarks = all();
+        String[] names = new String[benchmarks.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = benchmarks.get(i).name;
+        }
+        return names;
+    }
+
+    private static int drain(Controller controller) {
+        int count = 0;
+        while (controller.nextToken().getType() != LexicalScanner.Type.EOF) {
+            count++;
+        }
+        return count;
+    }
+
+    // the UTF-8 bytes of the corpus, read again through a duplicate on every run
+    private static ByteBuffer utf8(CharSequence source) {
+        return ByteBuffer.wrap(source.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Result run(Benchmark benchmark, CharSequence source, long seed) throws Exception {
+        Object state = benchmark.setup.prepare(source);
+        long deadline = System.nanoTime() + warmupMillis * 1_000_000L;
+        do {
+            consume(benchmark.operation.run(state));
+        } while (System.nanoTime() < deadline);
+
+        long ops = 0;
+        long elapsed = 0;
+        long allocated = 0;
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < iterations; i++) {
+            long before = threads == null ? 0 : threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long end = start + measureMillis * 1_000_000L;
+            long now;
+            do {
+                consume(benchmark.operation.run(state));
+                ops++;
+                now = System.nanoTime();
+            } while (now < end);
+            elapsed += now - start;
+            if (threads != null) {
+                allocated += threads.getThreadAllocatedBytes(thread) - before;
+            }
+        }
+        return new Result(benchmark.name, source.length(), seed, ops, elapsed,
+                threads == null ? -1 : allocated);
+    }
+
+    private static void consume(Object value) {
+        sink ^= System.identityHashCode(value);
+    }
+
+    interface Setup {
+        Object prepare(CharSequence source) throws Exception;
+    }
+
+    interface Operation {
+        Object run(Object state) throws Exception;
+    }
+
+    // a measured operation and the untimed setup that prepares its input from a corpus of the given shape
+    static final class Benchmark {
+        final String name;
+        final CorpusGenerator.Shape shape;
+        final Setup setup;
+        final Operation operation;
+
+        Benchmark(String name, Setup setup, Operation operation) {
+            this(name, CorpusGenerator.Shape.PARSEABLE, setup, operation);
+        }
+
+        Benchmark(String name, CorpusGenerator.Shape shape, Setup setup, Operation operation) {
+            this.name = name;
+            this.shape = shape;
+            this.setup = setup;
+            this.operation = operation;
+        }
+    }
+
+    public static final class Result {
+        static final String CSV_HEADER = "benchmark,size_bytes,seed,ops,ns_per_op,mb_per_s,alloc_bytes_per_op";
+
+        final String benchmark;
+        final long size;
+        final long seed;
+        final long ops;
+        final long elapsedNanos;
+        // -1 when the JVM cannot count allocated bytes per thread
+        final long allocated;
+
+        Result(String benchmark, long size, long seed, long ops, long elapsedNanos, long allocated) {
+            this.benchmark = benchmark;
+            this.size = size;
+            this.seed = seed;
+            this.ops = ops;
+            this.elapsedNanos = elapsedNanos;
+            this.allocated = allocated;
+        }
+
+        double nanosPerOp() {
+            return (double) elapsedNanos / ops;
+        }
+
+        double megabytesPerSecond() {
+            return size * ops / (elapsedNanos / 1e9) / (1 << 20);
+        }
+
+        long allocatedPerOp() {
+            return allocated < 0 ? -1 : allocated / ops;
+        }
+
+        String toCsv() {
+            return String.format(java.util.Locale.ROOT, "%s,%d,%d,%d,%.1f,%.2f,%d",
+                    benchmark, size, seed, ops, nanosPerOp(), megabytesPerSecond(), allocatedPerOp());
+        }
+
+        String toJson() {
+            return String.format(java.util.Locale.ROOT,
+                    "{\"benchmark\":\"%s\",\"size_bytes\":%d,\"seed\":%d,\"ops\":%d,"
+                            + "\"ns_per_op\":%.1f,\"mb_per_s\":%.2f,\"alloc_bytes_per_op\":%d}",
+                    benchmark, size, seed, ops, nanosPerOp(), megabytesPerSecond(), allocatedPerOp());
+        }
+    }
+}
@@ -0,0 +1,321 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// seeded generator of grammar-valid VC programs of a requested size
+public class CorpusGenerator {
+    public enum Shape {
+        // global var-decls and func-decls
+        PROGRAM,
+        // the subset Parser accepts end to end: statements in one function, no || or && (not lexed yet) and no
+        // calls or subscripts inside expressions
+        PARSEABLE,
+        // PARSEABLE with block and line comments before most statements and deeper indentation, over three
+        // quarters of the chars are comments or whitespace, like generated or heavily documented sources
+        COMMENTED,
+        // COMMENTED with a third of the comment words and every string literal in other scripts, mostly ASCII
+        // but not all of it
+        UNICODE
+    }
+
+    private static final String[] TYPES = {"int", "float", "boolean"};
+    private static final String[] NAMES = {"i", "j", "n", "sum", "count", "value", "total", "index", "flag", "tmp"};
+    private static final String[][] BINARY_LEVELS = {
+            {"||"}, {"&&"}, {"==", "!="}, {"<", "<=", ">", ">="}, {"+", "-"}, {"*", "/"}
+    };
+    private static final String[] WORDS = {"the", "value", "is", "updated", "before", "loop", "counter", "returns",
+            "index", "of", "checks", "that", "result", "*", "/", "**", "TODO:", "see", "above", "each", "step"};
+    // German, French, Russian, arrows, Japanese and an emoji: two, three and four byte UTF-8, escaped so the
+    // source compiles in any default encoding
+    private static final String[] UNICODE_WORDS = {"Z\u00e4hler", "gr\u00f6\u00dfer", "r\u00e9sultat",
+            "\u0437\u043d\u0430\u0447\u0435\u043d\u0438\u0435", "\u2192", "\u2264", "\u521d\u671f\u5316",
+            "\u30eb\u30fc\u30d7", "\u8a08\u6570", "\ud83d\ude00"};
+    private static final int MAX_DEPTH = 4;
+
+    private final Random random;
+    private final Shape shape;
+    private final Writer out;
+    private long written;
+
+    public CorpusGenerator(long seed, Shape shape, Writer out) {
+        this.random = new Random(seed);
+        this.shape = shape;
+        this.out = out;
+    }
+
+    // usage: CorpusGenerator <bytes>[k|m|g] [seed] [output-file] [--parseable | --commented | --unicode]
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: CorpusGenerator <bytes>[k|m|g] [seed] [output-file]"
+                    + " [--parseable | --commented | --unicode]");
+            return;
+        }
+        long bytes = parseSize(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        Shape shape = Shape.PROGRAM;
+        if (args.length > 3 && args[3].equals("--parseable")) {
+            shape = Shape.PARSEABLE;
+        } else if (args.length > 3 && args[3].equals("--commented")) {
+            shape = Shape.COMMENTED;
+        } else if (args.length > 3 && args[3].equals("--unicode")) {
+            shape = Shape.UNICODE;
+        }
+        Writer out = args.length > 2
+                ? Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try {
+            new CorpusGenerator(seed, shape, out).write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static long parseSize(String size) {
+        char unit = Character.toLowerCase(size.charAt(size.length() - 1));
+        long scale = unit == 'k' ? 1L << 10 : unit == 'm' ? 1L << 20 : unit == 'g' ? 1L << 30 : 1;
+        String digits = scale == 1 ? size : size.substring(0, size.length() - 1);
+        return Long.parseLong(digits) * scale;
+    }
+
+    public static String generate(long bytes, long seed, Shape shape) {
+        java.io.StringWriter buffer = new java.io.StringWriter();
+        try {
+            new CorpusGenerator(seed, shape, buffer).write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+
+    // writes whole declarations (or statements) until at least bytes chars are out
+    public void write(long bytes) throws IOException {
+        if (shape != Shape.PROGRAM) {
+            emit("void main() {\n");
+            while (written < bytes) {
+                statement(1, 0);
+            }
+            emit("}\n");
+        } else {
+            int function = 0;
+            while (written < bytes) {
+                if (random.nextInt(4) == 0) {
+                    varDecl(0);
+                } else {
+                    funcDecl(function++);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private void funcDecl(int number) throws IOException {
+        emit(random.nextInt(3) == 0 ? "void" : TYPES[random.nextInt(TYPES.length)]);
+        emit(" f" + number + "(");
+        int params = random.nextInt(4);
+        for (int i = 0; i < params; i++) {
+            emit(i == 0 ? "" : ", ");
+            emit(TYPES[random.nextInt(TYPES.length)] + " " + NAMES[random.nextInt(NAMES.length)]);
+        }
+        emit(") {\n");
+        int decls = random.nextInt(3);
+        for (int i = 0; i < decls; i++) {
+            varDecl(1);
+        }
+        int statements = 1 + random.nextInt(6);
+        for (int i = 0; i < statements; i++) {
+            statement(1, 0);
+        }
+        emit("}\n");
+    }
+
+    private void varDecl(int indent) throws IOException {
+        indent(indent);
+        emit(TYPES[random.nextInt(TYPES.length)] + " ");
+        int declarators = 1 + random.nextInt(2);
+        for (int i = 0; i < declarators; i++) {
+            emit(i == 0 ? "" : ", ");
+            emit(NAMES[random.nextInt(NAMES.length)]);
+            int form = random.nextInt(4);
+            if (form == 0) {
+                emit("[" + (1 + random.nextInt(64)) + "]");
+            } else if (form == 1) {
+                emit(" = ");
+                expression(0);
+            }
+        }
+        emit(";\n");
+    }
+
+    private void statement(int indent, int depth) throws IOException {
+        int kind = depth >= MAX_DEPTH ? 0 : random.nextInt(10);
+        if (shape == Shape.COMMENTED || shape == Shape.UNICODE) {
+            comment(indent);
+        }
+        indent(indent);
+        switch (kind) {
+            case 1:
+                emit("if (");
+                expression(0);
+                emit(") ");
+                block(indent, depth);
+                if (random.nextBoolean()) {
+                    emit(" else ");
+                    block(indent, depth);
+                }
+                emit("\n");
+                break;
+            case 2:
+                emit("while (");
+                expression(0);
+                emit(") ");
+                block(indent, depth);
+                emit("\n");
+                break;
+            case 3:
+                emit("for (");
+                assignment();
+                emit("; ");
+                expression(0);
+                emit("; ");
+                assignment();
+                emit(") ");
+                block(indent, depth);
+                emit("\n");
+                break;
+            case 4:
+                if (shape == Shape.PROGRAM) {
+                    emit(random.nextBoolean() ? "return " : "break");
+                    if (random.nextBoolean()) {
+                        expression(0);
+                    }
+                    emit(";\n");
+                } else {
+                    assignment();
+                    emit(";\n");
+                }
+                break;
+            default:
+                assignment();
+                emit(";\n");
+                break;
+        }
+    }
+
+    private void block(int indent, int depth) throws IOException {
+        emit("{\n");
+        int statements = 1 + random.nextInt(3);
+        for (int i = 0; i < statements; i++) {
+            statement(indent + 1, depth + 1);
+        }
+        indent(indent);
+        emit("}");
+    }
+
+    private void assignment() throws IOException {
+        emit(NAMES[random.nextInt(NAMES.length)] + " = ");
+        expression(0);
+    }
+
+    private void expression(int depth) throws IOException {
+        int lowest = shape != Shape.PROGRAM ? 2 : 0;
+        binary(lowest + random.nextInt(BINARY_LEVELS.length - lowest), depth);
+    }
+
+    private void binary(int level, int depth) throws IOException {
+        if (level >= BINARY_LEVELS.length || depth >= MAX_DEPTH || random.nextInt(3) == 0) {
+            primary(depth);
+            return;
+        }
+        binary(level + 1, depth + 1);
+        int more = random.nextInt(2);
+        for (int i = 0; i <= more; i++) {
+            String[] operators = BINARY_LEVELS[level];
+            emit(" " + operators[random.nextInt(operators.length)] + " ");
+            binary(level + 1, depth + 1);
+        }
+    }
+
+    private void primary(int depth) throws IOException {
+        int kind = depth >= MAX_DEPTH ? random.nextInt(3) : random.nextInt(6);
+        if (shape != Shape.PROGRAM && (kind == 3 || kind == 4)) {
+            kind = random.nextInt(3);
+        }
+        switch (kind) {
+            case 0:
+                emit(NAMES[random.nextInt(NAMES.length)]);
+                break;
+            case 1:
+                emit(Integer.toString(random.nextInt(1000)));
+                break;
+            case 2:
+                emit(random.nextInt(100) + "." + random.nextInt(100));
+                break;
+            case 3:
+                emit("g" + random.nextInt(10) + "(");
+                int args = random.nextInt(3);
+                for (int i = 0; i < args; i++) {
+                    emit(i == 0 ? "" : ", ");
+                    binary(BINARY_LEVELS.length - 2, depth + 1);
+                }
+                emit(")");
+                break;
+            case 4:
+                emit(NAMES[random.nextInt(NAMES.length)] + "[");
+                binary(BINARY_LEVELS.length - 2, depth + 1);
+                emit("]");
+                break;
+            default:
+                emit(shape == Shape.UNICODE
+                        ? "\"" + UNICODE_WORDS[random.nextInt(UNICODE_WORDS.length)] + "\""
+                        : "\"s" + random.nextInt(100) + "\"");
+                break;
+        }
+    }
+
+    // a line comment, or now and then a block comment of a few lines, on the lines before a statement
+    private void comment(int indent) throws IOException {
+        int kind = random.nextInt(4);
+        if (kind == 0) {
+            indent(indent);
+            emit("/*\n");
+            int lines = 2 + random.nextInt(4);
+            for (int i = 0; i < lines; i++) {
+                indent(indent);
+                emit(" * ");
+                words(4 + random.nextInt(8));
+            }
+            indent(indent);
+            emit(" */\n");
+        } else if (kind < 3) {
+            indent(indent);
+            emit("// ");
+            words(3 + random.nextInt(8));
+        }
+    }
+
+    private void words(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            emit(i == 0 ? "" : " ");
+            emit(shape == Shape.UNICODE && random.nextInt(3) == 0
+                    ? UNICODE_WORDS[random.nextInt(UNICODE_WORDS.length)]
+                    : WORDS[random.nextInt(WORDS.length)]);
+        }
+        emit("\n");
+    }
+
+    private void indent(int indent) throws IOException {
+        for (int i = 0; i < indent; i++) {
+            emit(shape == Shape.COMMENTED || shape == Shape.UNICODE ? "        " : "    ");
+        }
+    }
+
+    private void emit(String text) throws IOException {
+        out.write(text);
+        written += text.length();
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.Random;
+
+// seeded differential check of the scanner's fast paths against a plain scanTokens() of the same text:
+// scanTokensParallel on generated corpora and on copies broken up by random edits, so chunks also start inside
+// literals and comments, and IncrementalLexer after each of a run of random edits. exits with status 1 on the
+// first difference
+public class DifferentialCheck {
+    private static final CorpusGenerator.Shape[] SHAPES = CorpusGenerator.Shape.values();
+    // bits of source the edits insert, chosen to open and close literals and comments
+    private static final String[] FRAGMENTS = {"\"", "/*", "*/", "//", "\n", " ", "x", "12", "3.5E2", ".", "==",
+            "+", "{", "}", ";", "if", "else", "%", "\u00e9"};
+    private static final int PARALLELISM = 4;
+
+    private final Random random;
+    private int checks;
+
+    DifferentialCheck(long seed) {
+        this.random = new Random(seed);
+    }
+
+    // usage: DifferentialCheck [-s size] [-n files] [-e edits-per-file] [-seed n]
+    public static void main(String[] args) {
+        long size = 64 * 1024;
+        int files = 20;
+        int edits = 500;
+        long seed = 42;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-s") && i + 1 < args.length) {
+                size = CorpusGenerator.parseSize(args[++i]);
+            } else if (args[i].equals("-n") && i + 1 < args.length) {
+                files = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-e") && i + 1 < args.length) {
+                edits = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                System.out.println("Usage: DifferentialCheck [-s size] [-n files] [-e edits-per-file] [-seed n]");
+                return;
+            }
+        }
+        DifferentialCheck check = new DifferentialCheck(seed);
+        for (int i = 0; i < files; i++) {
+            CorpusGenerator.Shape shape = SHAPES[i % SHAPES.length];
+            String text = CorpusGenerator.generate(size, seed + i, shape);
+            String name = shape.name().toLowerCase() + " seed " + (seed + i);
+            if (!check.parallel(name, text) || !check.parallel(name + " edited", check.mutate(text))
+                    || !check.incremental(name, text, edits)) {
+                System.exit(1);
+            }
+        }
+        System.out.println(check.checks + " checks, no differences");
+    }
+
+    // scanTokensParallel with chunks small enough that every file is split several times
+    boolean parallel(String name, String text) {
+        Controller serial = new Controller(text).quiet();
+        TokenBuffer expected = serial.scanTokens();
+        for (int chunks = 2; chunks <= 16; chunks *= 2) {
+            Controller chunked = new Controller(text).quiet();
+            TokenBuffer actual = chunked.scanTokensParallel(PARALLELISM, Math.max(text.length() / chunks, 1));
+            String where = name + ", scanTokensParallel in " + chunks + " chunks";
+            if (!same(where, expected, actual) || !sameQuote(where, serial, chunked)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // each edit replaces up to 8 chars at a random offset with a fragment or nothing, the tokens kept up to date
+    // by the lexer must be those of a fresh scan of the edited text
+    boolean incremental(String name, String text, int edits) {
+        IncrementalLexer lexer = new IncrementalLexer(text);
+        for (int i = 0; i < edits; i++) {
+            int length = lexer.getText().length();
+            int offset = random.nextInt(length + 1);
+            int removed = Math.min(random.nextInt(9), length - offset);
+            String inserted = random.nextInt(4) == 0 ? "" : FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+            lexer.edit(offset, removed, inserted);
+
+            Controller fresh = new Controller(lexer.getText().toString()).quiet();
+            TokenBuffer expected = fresh.scanTokens();
+            String where = name + ", IncrementalLexer after edit " + (i + 1) + " (" + removed + " chars at " + offset
+                    + " replaced by \"" + inserted + "\")";
+            if (!same(where, expected, lexer.getTokens())) {
+                return false;
+            }
+            if (fresh.hasMissingQuote() != lexer.hasMissingQuote()) {
+                System.out.println(where + ": missing quote " + lexer.hasMissingQuote() + ", scanTokens gives "
+                        + fresh.hasMissingQuote());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the text with a few hundred random fragments inserted or chars removed
+    String mutate(String text) {
+        StringBuilder sb = new StringBuilder(text);
+        for (int i = 0; i < 200; i++) {
+            int offset = random.nextInt(sb.length() + 1);
+            if (random.nextBoolean()) {
+                sb.insert(offset, FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            } else {
+                sb.delete(offset, Math.min(offset + 1 + random.nextInt(8), sb.length()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private boolean same(String where, TokenBuffer expected, TokenBuffer actual) {
+        checks++;
+        int count = Math.min(expected.size(), actual.size());
+        for (int i = 0; i < count; i++) {
+            if (expected.getType(i) != actual.getType(i) || expected.getStart(i) != actual.getStart(i)
+                    || expected.getLength(i) != actual.getLength(i)
+                    || !expected.getValue(i).equals(actual.getValue(i))) {
+                System.out.println(where + ": token " + i + " is " + describe(actual, i) + ", scanTokens gives "
+                        + describe(expected, i));
+                return false;
+            }
+        }
+        if (expected.size() != actual.size()) {
+            System.out.println(where + ": " + actual.size() + " tokens, scanTokens gives " + expected.size());
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean sameQuote(String where, Controller expected, Controller actual) {
+        if (expected.hasMissingQuote() != actual.hasMissingQuote()) {
+            System.out.println(where + ": missing quote " + actual.hasMissingQuote() + ", scanTokens gives "
+                    + expected.hasMissingQuote());
+            return false;
+        }
+        return true;
+    }
+
+    private static String describe(TokenBuffer tokens, int i) {
+        return tokens.getType(i) + " " + tokens.getValue(i) + " at " + tokens.getStart(i);
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// round trip latency of ScanServer requests, one request in flight, against a server started as a child process
+public class ScanServerBenchmark {
+    private static final int SOURCES = 16;
+    private static final byte[][] KINDS = {
+            {ScanServer.SCAN, ScanServer.TEXT}, {ScanServer.SCAN, ScanServer.BINARY},
+            {ScanServer.PARSE, ScanServer.TEXT}, {ScanServer.PARSE, ScanServer.BINARY}
+    };
+
+    // usage: ScanServerBenchmark [-s source-size] [-n requests] [-w warmup-requests]
+    public static void main(String[] args) throws Exception {
+        long size = 2048;
+        int requests = 5000;
+        int warmup = 5000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-s") && i + 1 < args.length) {
+                size = CorpusGenerator.parseSize(args[++i]);
+            } else if (args[i].equals("-n") && i + 1 < args.length) {
+                requests = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-w") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            }
+        }
+        byte[][] sources = new byte[SOURCES][];
+        for (int i = 0; i < SOURCES; i++) {
+            sources[i] = CorpusGenerator.generate(size, i, CorpusGenerator.Shape.PROGRAM)
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ScanServer")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(server.getInputStream()))) {
+            System.out.println("request,bytes,requests,p50_us,p90_us,p99_us,max_us");
+            int id = 0;
+            for (byte[] kind : KINDS) {
+                for (int i = 0; i < warmup; i++) {
+                    roundTrip(out, in, id++, kind, sources[i % SOURCES]);
+                }
+                long[] nanos = new long[requests];
+                for (int i = 0; i < requests; i++) {
+                    nanos[i] = roundTrip(out, in, id++, kind, sources[i % SOURCES]);
+                }
+                Arrays.sort(nanos);
+                System.out.printf("%s-%s,%d,%d,%.1f,%.1f,%.1f,%.1f%n",
+                        kind[0] == ScanServer.SCAN ? "scan" : "parse", kind[1] == ScanServer.TEXT ? "text" : "binary",
+                        size, requests, percentile(nanos, 0.50), percentile(nanos, 0.90), percentile(nanos, 0.99),
+                        nanos[nanos.length - 1] / 1e3);
+            }
+        }
+        server.waitFor();
+    }
+
+    private static long roundTrip(DataOutputStream out, DataInputStream in, int id, byte[] kind, byte[] source)
+            throws IOException {
+        long start = System.nanoTime();
+        ScanServer.writeRequest(out, id, kind[0], kind[1], "bench.vc", source);
+        out.flush();
+        ScanServer.Response response = ScanServer.readResponse(in);
+        long elapsed = System.nanoTime() - start;
+        if (response == null || response.getId() != id || response.getStatus() != ScanServer.OK) {
+            throw new IOException("Bad response to request " + id + ": "
+                    + (response == null ? "none" : new String(response.getPayload(), StandardCharsets.UTF_8)));
+        }
+        return elapsed;
+    }
+
+    // in microseconds
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e3;
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.List;
+
+// parse time against token count, run with a large heap (e.g. -Xmx4g) for the 10M case
+public class TokenStreamBenchmark {
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000, 1_000_000, 10_000_000};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println("tokens,parse_ms,ns_per_token");
+        for (int size : sizes) {
+            List<Token> tokens = new Controller(program(size)).scan();
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                new Parser(new TokenStream(tokens)).parseProgram();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%d,%.2f,%.2f%n", tokens.size(), best / 1e6, (double) best / tokens.size());
+        }
+    }
+
+    // void f() { x = 1; x = 1; ... } with about the requested number of tokens
+    private static String program(int tokens) {
+        StringBuilder sb = new StringBuilder("void f() {\n");
+        for (int i = 6; i < tokens; i += 4) {
+            sb.append("x = 1;\n");
+        }
+        return sb.append("}\n").toString();
+    }
+}
@@ -0,0 +1,60 @@
+package vc.jmh;
+
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// each phase of bench/Benchmarks on the same generated corpora, timed by JMH in forked JVMs:
+//
+//   java -jar jmh/build/libs/benchmarks.jar -prof gc -p benchmark=scan,parse -p size=1m
+//
+// the scanner and the benchmarks live in the default package, which JMH does not allow for benchmark classes
+// and Java does not allow importing from, so the setup looks Benchmarks.prepare up by name. the measured call
+// is a plain Callable and its result goes to JMH's Blackhole
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PhaseBenchmarks {
+    @Param({"transition", "scan", "scan-commented", "scan-commented-string", "scan-utf8", "scan-utf8-decoded",
+            "nextToken", "nextToken-stream", "parse", "scan+parse", "scan+parse-pipelined", "toString"})
+    public String benchmark;
+
+    @Param({"1k", "64k", "1m"})
+    public String size;
+
+    @Param("42")
+    public long seed;
+
+    private Callable<Object> operation;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void prepare() throws Exception {
+        // the corpora are shared with the Benchmarks runner, large sizes are only written once
+        String corpusDir = Paths.get(System.getProperty("java.io.tmpdir"), "vc-corpus").toString();
+        Method prepare = Class.forName("Benchmarks")
+                .getMethod("prepare", String.class, String.class, long.class, String.class);
+        operation = (Callable<Object>) prepare.invoke(null, benchmark, size, seed, corpusDir);
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return operation.call();
+    }
+}
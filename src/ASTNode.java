@@ -12,6 +12,10 @@ class ASTNode {
         this.children = new ArrayList<>();
     }
 
+    // for views that answer the getters themselves
+    ASTNode() {
+    }
+
     public void addChild(ASTNode child) {
         children.add(child);
     }
@@ -28,16 +32,8 @@ class ASTNode {
         return children;
     }
 
+    // written with an explicit stack, deep trees do not overflow the call stack
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("(").append(type);
-        if (value != null) {
-            sb.append(" ").append(value);
-        }
-        for (ASTNode child : children) {
-            sb.append(" ").append(child.toString());
-        }
-        sb.append(")");
-        return sb.toString();
+        return AstWriter.toString(this);
     }
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// binary AST, read straight from the mapped file without a decoding pass
+//
+// layout, little endian, version 1:
+//   header (32 bytes): int magic "VCAS", short version, short 0, int nodes, int links, int strings, int root,
+//                      long string bytes
+//   byte kinds[nodes] (NodeKind ordinal), padding to 4 bytes
+//   int values[nodes] (string index, -1 for none), int child starts[nodes + 1], int children[links]
+//   int string ends[strings], UTF-8 string bytes
+// child handles are stored as SyntaxTree hands them out, markers as ~ordinal and a missing node as NONE
+public final class AstFile implements PackedTree {
+    public static final int MAGIC = 'V' | 'C' << 8 | 'A' << 16 | 'S' << 24;
+    public static final int VERSION = 1;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private final int nodes;
+    private final int root;
+    private final ByteBuffer kinds;
+    private final IntBuffer values;
+    private final IntBuffer childStart;
+    private final IntBuffer children;
+    private final IntBuffer stringEnds;
+    private final ByteBuffer stringBytes;
+
+    private AstFile(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = BinaryFormat.readHeader(channel, MAGIC, VERSION, path);
+        nodes = header.getInt(8);
+        int links = header.getInt(12);
+        int strings = header.getInt(16);
+        root = header.getInt(20);
+        long stringSize = header.getLong(24);
+
+        long position = BinaryFormat.HEADER_SIZE;
+        kinds = BinaryFormat.map(channel, position, nodes);
+        position = BinaryFormat.align(position + nodes);
+        values = BinaryFormat.map(channel, position, 4L * nodes).asIntBuffer();
+        position += 4L * nodes;
+        childStart = BinaryFormat.map(channel, position, 4L * (nodes + 1)).asIntBuffer();
+        position += 4L * (nodes + 1);
+        children = BinaryFormat.map(channel, position, 4L * links).asIntBuffer();
+        position += 4L * links;
+        stringEnds = BinaryFormat.map(channel, position, 4L * strings).asIntBuffer();
+        position += 4L * strings;
+        stringBytes = BinaryFormat.map(channel, position, stringSize);
+    }
+
+    // the mappings stay valid after the file is closed
+    public static AstFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new AstFile(channel, path);
+        }
+    }
+
+    public static void write(PackedTree tree, Path path) throws IOException {
+        write(tree, new BinaryFormat.Output(path));
+    }
+
+    // the same bytes as the file, the channel is closed afterwards
+    public static void write(PackedTree tree, WritableByteChannel channel) throws IOException {
+        write(tree, new BinaryFormat.Output(channel));
+    }
+
+    private static void write(PackedTree tree, BinaryFormat.Output output) throws IOException {
+        int nodes = tree.size();
+        BinaryFormat.Strings strings = new BinaryFormat.Strings();
+        int[] valueIds = new int[nodes];
+        int links = 0;
+        for (int node = 0; node < nodes; node++) {
+            String value = tree.getValue(node);
+            valueIds[node] = value == null ? -1 : strings.add(value);
+            links += tree.getChildCount(node);
+        }
+        try (BinaryFormat.Output out = output) {
+            out.putInt(MAGIC);
+            out.putShort(VERSION);
+            out.putShort(0);
+            out.putInt(nodes);
+            out.putInt(links);
+            out.putInt(strings.count());
+            out.putInt(tree.getRoot());
+            out.putLong(strings.byteSize());
+            for (int node = 0; node < nodes; node++) {
+                out.putByte(tree.getKind(node).ordinal());
+            }
+            out.align();
+            for (int node = 0; node < nodes; node++) {
+                out.putInt(valueIds[node]);
+            }
+            int start = 0;
+            for (int node = 0; node < nodes; node++) {
+                out.putInt(start);
+                start += tree.getChildCount(node);
+            }
+            out.putInt(start);
+            for (int node = 0; node < nodes; node++) {
+                for (int i = 0; i < tree.getChildCount(node); i++) {
+                    out.putInt(tree.getChild(node, i));
+                }
+            }
+            strings.writeEnds(out);
+            strings.writeBytes(out);
+        }
+    }
+
+    @Override
+    public int getRoot() {
+        return root;
+    }
+
+    @Override
+    public int size() {
+        return nodes;
+    }
+
+    @Override
+    public NodeKind getKind(int node) {
+        return node < 0 ? KINDS[~node] : KINDS[kinds.get(node)];
+    }
+
+    @Override
+    public String getValue(int node) {
+        return node < 0 ? null : BinaryFormat.string(stringEnds, stringBytes, values.get(node));
+    }
+
+    @Override
+    public int getChildCount(int node) {
+        return node < 0 ? 0 : childStart.get(node + 1) - childStart.get(node);
+    }
+
+    @Override
+    public int getChild(int node, int index) {
+        if (index < 0 || index >= getChildCount(node)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getChildCount(node));
+        }
+        return children.get(childStart.get(node) + index);
+    }
+}
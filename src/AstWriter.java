@@ -0,0 +1,171 @@
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// writes an AST as the S-expression toString() gives, walking it with an explicit stack
+public final class AstWriter implements Flushable {
+    public enum Style {
+        // one line, byte for byte the same as toString()
+        COMPACT,
+        // each child on its own line, two spaces deeper than its parent
+        INDENTED
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int INDENT = 2;
+
+    private final Appendable out;
+    private final Style style;
+
+    public AstWriter(Appendable out) {
+        this(out, Style.COMPACT);
+    }
+
+    public AstWriter(Appendable out, Style style) {
+        this.out = out;
+        this.style = style;
+    }
+
+    // UTF-8 through a fixed size buffer, call flush() when done
+    public AstWriter(OutputStream out, Style style) {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE), style);
+    }
+
+    public static String toString(ASTNode node) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            new AstWriter(sb).write(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    public static String toString(PackedTree tree, int node) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            new AstWriter(sb).write(tree, node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    public void write(PackedTree tree) throws IOException {
+        write(tree, tree.getRoot());
+    }
+
+    public void write(PackedTree tree, int node) throws IOException {
+        // nodes[i] has written its children up to next[i]
+        int[] nodes = new int[16];
+        int[] next = new int[16];
+        int depth = 0;
+        if (open(tree, node)) {
+            nodes[0] = node;
+            depth = 1;
+        }
+        while (depth > 0) {
+            int parent = nodes[depth - 1];
+            int index = next[depth - 1];
+            if (index == tree.getChildCount(parent)) {
+                out.append(')');
+                next[--depth] = 0;
+                continue;
+            }
+            next[depth - 1]++;
+            int child = tree.getChild(parent, index);
+            separate(depth);
+            if (open(tree, child)) {
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                }
+                nodes[depth++] = child;
+            }
+        }
+    }
+
+    public void write(ASTNode node) throws IOException {
+        ASTNode[] nodes = new ASTNode[16];
+        int[] next = new int[16];
+        int depth = 0;
+        if (open(node)) {
+            nodes[0] = node;
+            depth = 1;
+        }
+        while (depth > 0) {
+            List<ASTNode> children = nodes[depth - 1].getChildren();
+            int index = next[depth - 1];
+            if (index == children.size()) {
+                out.append(')');
+                nodes[--depth] = null;
+                next[depth] = 0;
+                continue;
+            }
+            next[depth - 1]++;
+            ASTNode child = children.get(index);
+            separate(depth);
+            if (open(child)) {
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                }
+                nodes[depth++] = child;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    // writes "(type value", a leaf is closed right away, true if the children come next
+    private boolean open(PackedTree tree, int node) throws IOException {
+        if (node == SyntaxTree.NONE) {
+            throw new NullPointerException("missing node");
+        }
+        out.append('(').append(tree.getKind(node).getLabel());
+        String value = tree.getValue(node);
+        if (value != null) {
+            out.append(' ').append(value);
+        }
+        if (tree.getChildCount(node) == 0) {
+            out.append(')');
+            return false;
+        }
+        return true;
+    }
+
+    private boolean open(ASTNode node) throws IOException {
+        out.append('(').append(node.getType());
+        String value = node.getValue();
+        if (value != null) {
+            out.append(' ').append(value);
+        }
+        if (node.getChildren().isEmpty()) {
+            out.append(')');
+            return false;
+        }
+        return true;
+    }
+
+    private void separate(int depth) throws IOException {
+        if (style == Style.COMPACT) {
+            out.append(' ');
+        } else {
+            out.append('\n');
+            for (int i = 0; i < depth * INDENT; i++) {
+                out.append(' ');
+            }
+        }
+    }
+}
@@ -1,133 +1,152 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
-public class Automaton {
-    public Map<State.STATE, LexicalScanner.Type> finalStates;
+public final class Automaton {
+    // character classes
+    public static final int DIGIT = 0;
+    public static final int DOT = 1;
+    public static final int QUOTE = 2;
+    public static final int UPPER_E = 3;
+    public static final int LOWER_E = 4;
+    public static final int LETTER = 5;
+    public static final int SEPARATOR = 6;
+    public static final int PLUS_MINUS = 7;
+    public static final int STAR_SLASH = 8;
+    public static final int RELATIONAL = 9;
+    public static final int EQUALS = 10;
+    public static final int PIPE = 11;
+    public static final int AMPERSAND = 12;
+    public static final int OTHER = 13;
+    public static final int CLASS_COUNT = 14;
 
-    // acceptable ending states
-    public Automaton() {
-        finalStates = new HashMap<>();
-        finalStates.put(State.STATE.s1, LexicalScanner.Type.IntLiteral);
-        finalStates.put(State.STATE.s3, LexicalScanner.Type.RealLiteral);
-        finalStates.put(State.STATE.s4, LexicalScanner.Type.RealLiteral);
-        finalStates.put(State.STATE.s6, LexicalScanner.Type.RealLiteral);
-        finalStates.put(State.STATE.s10, LexicalScanner.Type.StrLiteral);
-        finalStates.put(State.STATE.s11, LexicalScanner.Type.Identifier);
-        finalStates.put(State.STATE.s12, LexicalScanner.Type.Separator);
-        finalStates.put(State.STATE.s13, LexicalScanner.Type.Operator);
-        finalStates.put(State.STATE.s14, LexicalScanner.Type.Operator);
-        finalStates.put(State.STATE.s15, LexicalScanner.Type.Operator);
-        finalStates.put(State.STATE.s16, LexicalScanner.Type.Operator);
-        finalStates.put(State.STATE.s18, LexicalScanner.Type.Operator);
+    // states are encoded as their row offset in the transition table
+    public static final int START = State.STATE.s0.ordinal() * CLASS_COUNT;
+    public static final int INVALID = State.STATE.InvalidState.ordinal() * CLASS_COUNT;
+
+    private static final State.STATE[] STATES = State.STATE.values();
+
+    // shared compiled automaton, the tables never change after construction
+    public static final Automaton INSTANCE = new Automaton();
+
+    private final byte[] charClasses;
+    // flattened [state][charClass] table
+    private final int[] transitions;
+    private final LexicalScanner.Type[] acceptTypes;
+
+    private Automaton() {
+        // one entry per char value so the lookup never needs a range check
+        charClasses = new byte[Character.MAX_VALUE + 1];
+        for (int c = 0; c < charClasses.length; c++) {
+            charClasses[c] = (byte) classify((char) c);
+        }
+
+        transitions = new int[STATES.length * CLASS_COUNT];
+        Arrays.fill(transitions, INVALID);
+        on(State.STATE.s0, State.STATE.s1, DIGIT);
+        on(State.STATE.s0, State.STATE.s7, DOT);
+        on(State.STATE.s0, State.STATE.s9, QUOTE);
+        on(State.STATE.s0, State.STATE.s11, UPPER_E, LOWER_E, LETTER);
+        on(State.STATE.s0, State.STATE.s12, SEPARATOR);
+        on(State.STATE.s0, State.STATE.s13, PLUS_MINUS, STAR_SLASH);
+        on(State.STATE.s0, State.STATE.s14, RELATIONAL);
+        on(State.STATE.s0, State.STATE.s16, EQUALS);
+        on(State.STATE.s0, State.STATE.s17, PIPE);
+        on(State.STATE.s0, State.STATE.s19, AMPERSAND);
+        on(State.STATE.s1, State.STATE.s1, DIGIT);
+        on(State.STATE.s1, State.STATE.s2, DOT);
+        on(State.STATE.s1, State.STATE.s4, UPPER_E);
+        on(State.STATE.s2, State.STATE.s3, DIGIT);
+        on(State.STATE.s3, State.STATE.s3, DIGIT);
+        on(State.STATE.s3, State.STATE.s4, UPPER_E, LOWER_E);
+        on(State.STATE.s4, State.STATE.s6, DIGIT);
+        on(State.STATE.s4, State.STATE.s5, PLUS_MINUS);
+        on(State.STATE.s5, State.STATE.s6, DIGIT);
+        on(State.STATE.s6, State.STATE.s6, DIGIT);
+        on(State.STATE.s7, State.STATE.s8, DIGIT);
+        on(State.STATE.s8, State.STATE.s8, DIGIT);
+        on(State.STATE.s8, State.STATE.s4, UPPER_E);
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            transitions[State.STATE.s9.ordinal() * CLASS_COUNT + c] = (c == QUOTE ? State.STATE.s10 : State.STATE.s9).ordinal() * CLASS_COUNT;
+        }
+        on(State.STATE.s11, State.STATE.s11, DIGIT, UPPER_E, LOWER_E, LETTER);
+        on(State.STATE.s13, State.STATE.s15, PLUS_MINUS);
+        on(State.STATE.s14, State.STATE.s15, EQUALS);
+        on(State.STATE.s16, State.STATE.s15, EQUALS);
+        on(State.STATE.s17, State.STATE.s18, PIPE);
+        on(State.STATE.s19, State.STATE.s18, AMPERSAND);
+
+        // acceptable ending states
+        acceptTypes = new LexicalScanner.Type[STATES.length];
+        acceptTypes[State.STATE.s1.ordinal()] = LexicalScanner.Type.IntLiteral;
+        acceptTypes[State.STATE.s3.ordinal()] = LexicalScanner.Type.RealLiteral;
+        acceptTypes[State.STATE.s4.ordinal()] = LexicalScanner.Type.RealLiteral;
+        acceptTypes[State.STATE.s6.ordinal()] = LexicalScanner.Type.RealLiteral;
+        acceptTypes[State.STATE.s10.ordinal()] = LexicalScanner.Type.StrLiteral;
+        acceptTypes[State.STATE.s11.ordinal()] = LexicalScanner.Type.Identifier;
+        acceptTypes[State.STATE.s12.ordinal()] = LexicalScanner.Type.Separator;
+        acceptTypes[State.STATE.s13.ordinal()] = LexicalScanner.Type.Operator;
+        acceptTypes[State.STATE.s14.ordinal()] = LexicalScanner.Type.Operator;
+        acceptTypes[State.STATE.s15.ordinal()] = LexicalScanner.Type.Operator;
+        acceptTypes[State.STATE.s16.ordinal()] = LexicalScanner.Type.Operator;
+        acceptTypes[State.STATE.s18.ordinal()] = LexicalScanner.Type.Operator;
+    }
+
+    private void on(State.STATE from, State.STATE to, int... classes) {
+        for (int c : classes) {
+            transitions[from.ordinal() * CLASS_COUNT + c] = to.ordinal() * CLASS_COUNT;
+        }
+    }
+
+    // only used while building the lookup table
+    private static int classify(char c) {
+        if (LexicalScanner.isNumber(c)) {
+            return DIGIT;
+        } else if (c == '.') {
+            return DOT;
+        } else if (c == '"') {
+            return QUOTE;
+        } else if (c == 'E') {
+            return UPPER_E;
+        } else if (c == 'e') {
+            return LOWER_E;
+        } else if (LexicalScanner.isAlaphabet(c)) {
+            return LETTER;
+        } else if (LexicalScanner.isSeparator(c)) {
+            return SEPARATOR;
+        } else if (c == '+' || c == '-') {
+            return PLUS_MINUS;
+        } else if (c == '*' || c == '/') {
+            return STAR_SLASH;
+        } else if (c == '>' || c == '<' || c == '!') {
+            return RELATIONAL;
+        } else if (c == '=') {
+            return EQUALS;
+        } else if (c == '|') {
+            return PIPE;
+        } else if (c == '&') {
+            return AMPERSAND;
+        } else return OTHER;
+    }
+
+    public int charClass(char entry) {
+        return charClasses[entry];
+    }
+
+    // transition on encoded states
+    public int transition(int current, char entry) {
+        return transitions[current + charClasses[entry]];
+    }
+
+    public boolean isAccepting(int state) {
+        return acceptTypes[state / CLASS_COUNT] != null;
+    }
+
+    // token type of an accepting state, null otherwise
+    public LexicalScanner.Type acceptType(int state) {
+        return acceptTypes[state / CLASS_COUNT];
     }
 
     //transition
     public State.STATE exercuteTransition(State.STATE current, char entry) {
-        switch (current) {
-            case s0: {
-                if (LexicalScanner.isNumber(entry)) {
-                    return State.STATE.s1;
-                } else if (entry == '.') {
-                    return State.STATE.s7;
-                } else if (entry == '"') {
-                    return State.STATE.s9;
-                } else if (LexicalScanner.isAlaphabet(entry)) {
-                    return State.STATE.s11;
-                } else if (LexicalScanner.isSeparator(entry)) {
-                    return State.STATE.s12;
-                } else if (entry == '+' || entry == '-' || entry == '*' || entry == '/') {
-                    return State.STATE.s13;
-                } else if (entry == '>' || entry == '<' || entry == '!') {
-                    return State.STATE.s14;
-                } else if (entry == '=') {
-                    return State.STATE.s16;
-                } else if (entry == '|') {
-                    return State.STATE.s17;
-                } else if (entry == '&') {
-                    return State.STATE.s19;
-                } else return State.STATE.InvalidState;
-            }
-            case s1: {
-                if (LexicalScanner.isNumber(entry)) {
-                    return State.STATE.s1;
-                } else if (entry == '.') {
-                    return State.STATE.s2;
-                } else if (entry == 'E') {
-                    return State.STATE.s4;
-                } else return State.STATE.InvalidState;
-            }
-            case s2: {
-                if (LexicalScanner.isNumber(entry)) {
-                    return State.STATE.s3;
-                } else return State.STATE.InvalidState;
-            }
-            case s3: {
-                if (LexicalScanner.isNumber(entry)) {
-                    return State.STATE.s3;
-                } else if (entry == 'E' || entry == 'e') {
-                    return State.STATE.s4;
-                } else return State.STATE.InvalidState;
-            }
-            case s4: {
-                if (LexicalScanner.isNumber(entry)) {
-                    return State.STATE.s6;
-                } else if (entry == '+' || entry == '-') {
-                    return State.STATE.s5;
-                } else return State.STATE.InvalidState;
-            }
-            case s5:
-            case s6: {
-                if (LexicalScanner.isNumber(entry)) {
-                    return State.STATE.s6;
-                } else return State.STATE.InvalidState;
-            }
-            case s7: {
-                if (LexicalScanner.isNumber(entry)) {
-                    return State.STATE.s8;
-                } else return State.STATE.InvalidState;
-            }
-            case s8: {
-                if (LexicalScanner.isNumber(entry)) {
-                    return State.STATE.s8;
-                } else if (entry == 'E') {
-                    return State.STATE.s4;
-                } else return State.STATE.InvalidState;
-            }
-            case s9: {
-                if (entry == '"') {
-                    return State.STATE.s10;
-                } else return State.STATE.s9;
-            }
-            case s11: {
-                if (LexicalScanner.isNumber(entry) || LexicalScanner.isAlaphabet(entry)) {
-                    return State.STATE.s11;
-                } else return State.STATE.InvalidState;
-            }
-            case s13: {
-                if (entry == '+' || entry == '-') {
-                    return State.STATE.s15;
-                } else return State.STATE.InvalidState;
-            }
-            case s14:
-            case s16: {
-                if (entry == '=') {
-                    return State.STATE.s15;
-                } else return State.STATE.InvalidState;
-            }
-            case s17: {
-                if (entry == '|') {
-                    return State.STATE.s18;
-                } else return State.STATE.InvalidState;
-            }
-            case s19: {
-                if (entry == '&') {
-                    return State.STATE.s18;
-                } else return State.STATE.InvalidState;
-            }
-            default:
-                return State.STATE.InvalidState;
-        }
+        return STATES[transition(current.ordinal() * CLASS_COUNT, entry) / CLASS_COUNT];
     }
-    
 }
-
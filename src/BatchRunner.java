@@ -0,0 +1,412 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// non-interactive mode: scan and parse every matching file on a work-stealing pool
+public class BatchRunner {
+    private static final String SOURCE_EXTENSION = ".vc";
+    private static final long DEFAULT_CACHE_MEGABYTES = 1024;
+    private static final String USAGE = "Usage: Main [-o output-dir] [-j threads] [-b] [-c cache-dir]"
+            + " [-m cache-megabytes] [-l log-seconds] (file | directory | glob)...";
+
+    private final Path outputDir;
+    private final ForkJoinPool pool;
+    // also write the tokens and tree as TokenFile (.vctb) and AstFile (.vcab)
+    private final boolean binary;
+    // scan and parse results of earlier runs, may be null
+    private final ScanCache cache;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong syntaxErrors = new AtomicLong();
+    // identifier names of every file in the batch, and how many identifiers were scanned into it
+    private final SymbolTable symbols = new SymbolTable();
+    private final AtomicLong identifiers = new AtomicLong();
+    private final AtomicLong identifierBytes = new AtomicLong();
+    // this batch only, also added to ScanMetrics.GLOBAL
+    private final ScanMetrics metrics = new ScanMetrics();
+
+    // outputDir may be null to write the results next to each input
+    public BatchRunner(Path outputDir, int parallelism) {
+        this(outputDir, parallelism, false);
+    }
+
+    public BatchRunner(Path outputDir, int parallelism, boolean binary) {
+        this(outputDir, parallelism, binary, null);
+    }
+
+    public BatchRunner(Path outputDir, int parallelism, boolean binary, ScanCache cache) {
+        this.outputDir = outputDir;
+        this.pool = new ForkJoinPool(parallelism);
+        this.binary = binary;
+        this.cache = cache;
+    }
+
+    // usage: [-o output-dir] [-j threads] [-b] [-c cache-dir] [-m cache-megabytes] [-l log-seconds]
+    //        (file | directory | glob)...
+    public static void main(String[] args) throws IOException {
+        Path outputDir = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean binary = false;
+        Path cacheDir = null;
+        long cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+        long logSeconds = 0;
+        List<String> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-o") && i + 1 < args.length) {
+                    outputDir = Paths.get(args[++i]);
+                } else if (args[i].equals("-j") && i + 1 < args.length) {
+                    parallelism = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-b")) {
+                    binary = true;
+                } else if (args[i].equals("-c") && i + 1 < args.length) {
+                    cacheDir = Paths.get(args[++i]);
+                } else if (args[i].equals("-m") && i + 1 < args.length) {
+                    cacheMegabytes = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-l") && i + 1 < args.length) {
+                    logSeconds = Long.parseLong(args[++i]);
+                } else {
+                    inputs.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println(USAGE);
+            return;
+        }
+        if (inputs.isEmpty() || parallelism < 1 || cacheMegabytes < 0 || logSeconds < 0) {
+            System.out.println(USAGE);
+            return;
+        }
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+        }
+        ScanCache cache = cacheDir == null ? null : new ScanCache(cacheDir, cacheMegabytes << 20);
+        BatchRunner runner = new BatchRunner(outputDir, parallelism, binary, cache);
+        List<Source> sources = new ArrayList<>();
+        for (String input : inputs) {
+            sources.addAll(collect(input));
+        }
+        sources = distinct(sources);
+        runner.checkOutputs(sources);
+        ScanMetrics.register();
+        ScheduledFuture<?> log = logSeconds > 0
+                ? ScanMetrics.GLOBAL.logEvery(logSeconds, TimeUnit.SECONDS, System.out) : null;
+        try {
+            runner.run(sources);
+        } finally {
+            if (log != null) {
+                log.cancel(false);
+            }
+        }
+    }
+
+    public void run(List<Source> sources) {
+        long start = System.nanoTime();
+        try {
+            pool.invoke(new BatchTask(this, sources, 0, sources.size()));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d files done, %d failed, %d syntax errors, %d tokens, %d bytes in %.2f s:"
+                        + " %.1f files/s, %.0f tokens/s%n",
+                files.get(), failures.get(), syntaxErrors.get(), tokens.get(), bytes.get(), seconds,
+                files.get() / seconds, tokens.get() / seconds);
+        System.out.println("metrics: " + metrics);
+        System.out.printf("symbols: %d names in %d bytes for %d identifiers, %d bytes as a String each%n",
+                symbols.size(), symbols.getRetainedBytes(), identifiers.get(), identifierBytes.get());
+        if (cache != null) {
+            System.out.printf("cache: %d hits, %d misses, %d evictions, %d entries, %d bytes%n",
+                    cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getEntryCount(),
+                    cache.getSize());
+        }
+    }
+
+    // a file reached through more than one argument, e.g. src and src/**/*.vc, is processed once, as it was
+    // first found
+    static List<Source> distinct(List<Source> sources) {
+        Map<Path, Source> byFile = new LinkedHashMap<>();
+        for (Source source : sources) {
+            byFile.putIfAbsent(source.file.toAbsolutePath().normalize(), source);
+        }
+        return new ArrayList<>(byFile.values());
+    }
+
+    // two inputs with the same output files would overwrite each other's results from different workers, e.g.
+    // a/x.vc and b/x.vc with -o, which both keep only x.vc below the output directory
+    void checkOutputs(List<Source> sources) throws IOException {
+        Map<Path, Path> inputs = new HashMap<>();
+        for (Source source : sources) {
+            Path target = target(source, ".vctok").toAbsolutePath().normalize();
+            Path other = inputs.putIfAbsent(target, source.file);
+            if (other != null) {
+                throw new IOException("Inputs " + other + " and " + source.file + " would both be written to "
+                        + target);
+            }
+        }
+    }
+
+    // a file argument, every .vc file under a directory, or a glob such as src/**/*.vc
+    public static List<Source> collect(String input) throws IOException {
+        int wildcard = indexOfWildcard(input);
+        Path root;
+        PathMatcher matcher;
+        if (wildcard < 0) {
+            Path path = Paths.get(input);
+            if (Files.isRegularFile(path)) {
+                List<Source> single = new ArrayList<>();
+                single.add(new Source(path, path.getFileName()));
+                return single;
+            }
+            if (!Files.isDirectory(path)) {
+                throw new IOException("No such file or directory: " + input);
+            }
+            root = path;
+            matcher = file -> file.toString().endsWith(SOURCE_EXTENSION);
+        } else {
+            // the glob is matched below the last directory before its first wildcard
+            int slash = Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf(File.separatorChar, wildcard));
+            root = Paths.get(slash < 0 ? "." : input.substring(0, slash + 1));
+            String glob = input.substring(slash + 1);
+            PathMatcher nested = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            // a leading **/ also matches no directory at all, so src/**/*.vc takes the files in src too
+            PathMatcher top = glob.startsWith("**/") || glob.startsWith("**" + File.separator)
+                    ? FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(3)) : null;
+            matcher = file -> nested.matches(file) || top != null && top.matches(file);
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(root.relativize(file)))
+                    .sorted()
+                    .map(file -> new Source(file, root.relativize(file)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int indexOfWildcard(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void process(Source source) {
+        try {
+            long size = Files.size(source.file);
+            ScanMetrics.Run run = metrics.start(size);
+            String key = cache == null ? null : cache.key(source.file);
+            ScanCache.Entry cached = key == null ? null : cache.get(key);
+            int tokenCount = cached != null ? writeCached(source, cached, run) : scanAndParse(source, key, run);
+            run.end();
+
+            files.incrementAndGet();
+            tokens.addAndGet(tokenCount);
+            bytes.addAndGet(size);
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            failures.incrementAndGet();
+            System.out.println(source.file + ": " + e);
+        }
+    }
+
+    private int scanAndParse(Source source, String key, ScanMetrics.Run run) throws IOException {
+        String name = source.file.toString();
+        CharSequence input = SourceFile.read(source.file);
+        ScanEvents.FileScan scanEvent = ScanEvents.fileScan();
+        // quiet: a missing quote is reported with the file's syntax errors instead of printed without a name
+        Controller controller = new Controller(input, KeywordTable.DEFAULT, symbols).quiet();
+        TokenBuffer result = controller.scanTokens();
+        if (scanEvent != null) {
+            scanEvent.finish(name, run.getBytes(), result);
+        }
+        run.scanned(result);
+        countIdentifiers(result);
+
+        Path tokenOutput = output(source, ".vctok");
+        ScanEvents.Output tokenEvent = ScanEvents.output();
+        try (Writer writer = Files.newBufferedWriter(tokenOutput, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < result.size(); i++) {
+                writeToken(writer, result.getType(i), result.getValue(i));
+            }
+        }
+        if (tokenEvent != null) {
+            tokenEvent.finish(tokenOutput, ".vctok", result.size());
+        }
+        run.serialized();
+
+        ScanEvents.Parse parseEvent = ScanEvents.parse();
+        Diagnostics diagnostics = new Diagnostics();
+        if (controller.hasMissingQuote()) {
+            diagnostics.report("Missing closing double quote", result.size(), -1);
+        }
+        Parser parser = new Parser(controller.getTokenStream(), diagnostics, name);
+        SyntaxTree ast = parser.parseTree();
+        if (parseEvent != null) {
+            parseEvent.finish(name, run.getBytes(), result.size(), ast, parser.getDiagnostics());
+        }
+        run.parsed(ast);
+        report(source, input, parser.getDiagnostics());
+        Path treeOutput = output(source, ".vcps");
+        ScanEvents.Output treeEvent = ScanEvents.output();
+        try (Writer writer = Files.newBufferedWriter(treeOutput, StandardCharsets.UTF_8)) {
+            new AstWriter(writer).write(ast);
+        }
+        if (treeEvent != null) {
+            treeEvent.finish(treeOutput, ".vcps", ast.size());
+        }
+        int flags = controller.hasMissingQuote() ? TokenFile.MISSING_QUOTE : 0;
+        if (binary) {
+            TokenFile.write(result, flags, output(source, ".vctb"));
+            AstFile.write(ast, output(source, ".vcab"));
+        }
+        if (key != null) {
+            cache.put(key, result, flags, ast, parser.getDiagnostics());
+        }
+        run.serialized();
+        return result.size();
+    }
+
+    // what the interned identifiers would take as a String of their own each
+    private void countIdentifiers(TokenBuffer result) {
+        long count = 0;
+        long size = 0;
+        for (int i = 0; i < result.size(); i++) {
+            if (result.getSymbol(i) >= 0) {
+                count++;
+                size += SymbolTable.stringBytes(result.getLength(i));
+            }
+        }
+        identifiers.addAndGet(count);
+        identifierBytes.addAndGet(size);
+    }
+
+    // the same outputs as scanAndParse, read from the cache entry
+    private int writeCached(Source source, ScanCache.Entry cached, ScanMetrics.Run run) throws IOException {
+        TokenFile result = cached.getTokens();
+        run.loaded(result, cached.getTree());
+        Path tokenOutput = output(source, ".vctok");
+        ScanEvents.Output tokenEvent = ScanEvents.output();
+        try (Writer writer = Files.newBufferedWriter(tokenOutput, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < result.size(); i++) {
+                writeToken(writer, result.getType(i), result.getValue(i));
+            }
+        }
+        if (tokenEvent != null) {
+            tokenEvent.finish(tokenOutput, ".vctok", result.size());
+        }
+        if (!cached.getDiagnostics().isEmpty()) {
+            // only broken files pay for reading the source, to turn offsets into lines
+            report(source, SourceFile.read(source.file), cached.getDiagnostics());
+        }
+        Path treeOutput = output(source, ".vcps");
+        ScanEvents.Output treeEvent = ScanEvents.output();
+        try (Writer writer = Files.newBufferedWriter(treeOutput, StandardCharsets.UTF_8)) {
+            new AstWriter(writer).write(cached.getTree());
+        }
+        if (treeEvent != null) {
+            treeEvent.finish(treeOutput, ".vcps", cached.getTree().size());
+        }
+        if (binary) {
+            Files.copy(cached.getTokenPath(), output(source, ".vctb"), StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(cached.getTreePath(), output(source, ".vcab"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        run.serialized();
+        return result.size();
+    }
+
+    // every syntax error as file:line:column: message, printed in one piece so workers do not interleave
+    private void report(Source source, CharSequence input, Diagnostics diagnostics) {
+        if (diagnostics.isEmpty()) {
+            return;
+        }
+        syntaxErrors.addAndGet(diagnostics.size());
+        StringBuilder sb = new StringBuilder();
+        for (String line : diagnostics.format(input)) {
+            sb.append(source.file).append(':').append(line).append(System.lineSeparator());
+        }
+        System.out.print(sb);
+    }
+
+    private static void writeToken(Writer writer, LexicalScanner.Type type, String value) throws IOException {
+        writer.write(type.toString());
+        writer.write(' ');
+        writer.write(value);
+        writer.write('\n');
+    }
+
+    private Path output(Source source, String extension) throws IOException {
+        Path target = target(source, extension);
+        if (outputDir != null && target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        return target;
+    }
+
+    private Path target(Source source, String extension) {
+        Path base = outputDir == null ? source.file : outputDir.resolve(source.relative);
+        String name = base.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return base.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + extension);
+    }
+
+    // an input file and its path below the argument it was found under
+    public static final class Source {
+        final Path file;
+        final Path relative;
+
+        Source(Path file, Path relative) {
+            this.file = file;
+            this.relative = relative;
+        }
+    }
+
+    // splits the file list in halves until one file is left, idle workers steal the other halves
+    private static final class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BatchRunner runner;
+        private final List<Source> sources;
+        private final int from;
+        private final int to;
+
+        BatchTask(BatchRunner runner, List<Source> sources, int from, int to) {
+            this.runner = runner;
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                runner.process(sources.get(from));
+            } else if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(runner, sources, from, middle), new BatchTask(runner, sources, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// shared pieces of the binary token and AST files: little endian sections, each mapped on its own
+final class BinaryFormat {
+    static final int HEADER_SIZE = 32;
+
+    private BinaryFormat() {
+    }
+
+    // int sections start on a 4 byte boundary
+    static long align(long position) {
+        return (position + 3) & ~3L;
+    }
+
+    static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Section too large to map: " + size + " bytes");
+        }
+        if (offset + size > channel.size()) {
+            throw new IOException("Truncated file: section ends at " + (offset + size)
+                    + ", file has " + channel.size() + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static ByteBuffer readHeader(FileChannel channel, int magic, int version, Path path) throws IOException {
+        ByteBuffer header = map(channel, 0, HEADER_SIZE);
+        if (header.getInt(0) != magic) {
+            throw new IOException("Not a " + (char) (magic & 0xFF) + (char) (magic >> 8 & 0xFF)
+                    + (char) (magic >> 16 & 0xFF) + (char) (magic >>> 24) + " file: " + path);
+        }
+        if (header.getShort(4) != version) {
+            throw new IOException("Unsupported version " + header.getShort(4) + " in " + path
+                    + ", expected " + version);
+        }
+        return header;
+    }
+
+    // string i is bytes[ends[i - 1], ends[i]), decoded on each call
+    static String string(IntBuffer ends, ByteBuffer bytes, int index) {
+        if (index < 0) {
+            return null;
+        }
+        int start = index == 0 ? 0 : ends.get(index - 1);
+        int end = ends.get(index);
+        byte[] utf8 = new byte[end - start];
+        for (int i = 0; i < utf8.length; i++) {
+            utf8[i] = bytes.get(start + i);
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    // distinct strings in first use order, written as an end offset table and UTF-8 bytes
+    static final class Strings {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int[] ends = new int[64];
+        private byte[] bytes = new byte[1024];
+        private int count;
+        private int size;
+
+        int add(String value) {
+            Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            if (size + utf8.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + utf8.length));
+            }
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            ends[count] = size;
+            ids.put(value, count);
+            return count++;
+        }
+
+        int count() {
+            return count;
+        }
+
+        long byteSize() {
+            return size;
+        }
+
+        void writeEnds(Output out) throws IOException {
+            for (int i = 0; i < count; i++) {
+                out.putInt(ends[i]);
+            }
+        }
+
+        void writeBytes(Output out) throws IOException {
+            out.putBytes(bytes, 0, size);
+        }
+    }
+
+    // little endian writes to a file or other channel through a fixed size buffer
+    static final class Output implements Closeable {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final int HEAP_BUFFER_SIZE = 8 * 1024;
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+        private long written;
+
+        Output(Path path) throws IOException {
+            this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING));
+        }
+
+        // files get a large direct buffer, in-memory and pipe channels a small heap buffer that is cheap to make
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+            this.buffer = (channel instanceof FileChannel ? ByteBuffer.allocateDirect(BUFFER_SIZE)
+                    : ByteBuffer.allocate(HEAP_BUFFER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long position() {
+            return written + buffer.position();
+        }
+
+        void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void putShort(int value) throws IOException {
+            ensure(2);
+            buffer.putShort((short) value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putBytes(byte[] values, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensure(1);
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(values, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        // zero bytes up to the next 4 byte boundary
+        void align() throws IOException {
+            while ((position() & 3) != 0) {
+                putByte(0);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// whitespace and comment skipping many chars at a time: the mapped bytes of an ASCII source are read eight at a
+// time as a long and tested with SWAR bit tricks, a String is searched with its own indexOf, which the JIT
+// vectorises on recent JVMs, and any other CharSequence is walked a char at a time
+final class BulkSkip {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private BulkSkip() {
+    }
+
+    // end of the whitespace starting at from, at most to
+    static int whitespaceEnd(CharSequence input, int from, int to) {
+        if (input instanceof SourceFile.AsciiSequence) {
+            SourceFile.AsciiSequence ascii = (SourceFile.AsciiSequence) input;
+            return whitespaceEnd(ascii.bytes(), ascii.offset(), from, to);
+        }
+        int i = from;
+        while (i < to && LexicalScanner.isWhitespace(input.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // first index of c in [from, to), to if there is none
+    static int indexOf(CharSequence input, char c, int from, int to) {
+        if (input instanceof SourceFile.AsciiSequence && c < 0x80) {
+            SourceFile.AsciiSequence ascii = (SourceFile.AsciiSequence) input;
+            return indexOf(ascii.bytes(), ascii.offset(), (byte) c, from, to);
+        }
+        if (input instanceof String) {
+            int index = ((String) input).indexOf(c, from);
+            return index < 0 || index > to ? to : index;
+        }
+        int i = from;
+        while (i < to && input.charAt(i) != c) {
+            i++;
+        }
+        return i;
+    }
+
+    // bytes[offset + from, offset + to) are ASCII or UTF-8, the bytes of a multi-byte char never match
+    static int whitespaceEnd(ByteBuffer bytes, int offset, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long other = ~whitespace(bytes.getLong(offset + i)) & HIGH_BITS;
+            if (other != 0) {
+                return i + first(bytes, other);
+            }
+        }
+        while (i < to && LexicalScanner.isWhitespace((char) (bytes.get(offset + i) & 0xFF))) {
+            i++;
+        }
+        return i;
+    }
+
+    static int indexOf(ByteBuffer bytes, int offset, byte c, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = bytes.getLong(offset + i);
+            long found = inRange(word & ~HIGH_BITS, c, c) & ~word;
+            if (found != 0) {
+                return i + first(bytes, found);
+            }
+        }
+        while (i < to && bytes.get(offset + i) != c) {
+            i++;
+        }
+        return i;
+    }
+
+    // the high bit of every byte Character.isWhitespace accepts: '\t' to '\r' and the separators 0x1C to ' ',
+    // bytes from 0x80 up are tested without their high bit and then dropped
+    private static long whitespace(long word) {
+        long ascii = word & ~HIGH_BITS;
+        return (inRange(ascii, '\t', '\r') | inRange(ascii, 0x1C, ' ')) & ~word;
+    }
+
+    // the high bit of every byte in [low, high], each byte must be below 0x80 so no sum carries into the next
+    private static long inRange(long word, int low, int high) {
+        return (word + (0x80 - low) * ONES) & ~(word + (0x7F - high) * ONES) & HIGH_BITS;
+    }
+
+    // position of the first flagged byte in memory order
+    private static int first(ByteBuffer bytes, long flags) {
+        return (bytes.order() == ByteOrder.BIG_ENDIAN
+                ? Long.numberOfLeadingZeros(flags) : Long.numberOfTrailingZeros(flags)) >>> 3;
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+// sliding window over a Reader, indexes are relative to the first char still held
+final class CharWindow implements CharSequence {
+    private final Reader reader;
+    private char[] buffer;
+    private int count;
+    private boolean exhausted;
+
+    CharWindow(Reader reader, int capacity) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(capacity, 16)];
+        this.count = 0;
+        this.exhausted = false;
+    }
+
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    // drop the chars before keepFrom and read more input, returns how many chars were dropped
+    int fill(int keepFrom) {
+        int shift = Math.max(0, Math.min(keepFrom, count));
+        System.arraycopy(buffer, shift, buffer, 0, count - shift);
+        count -= shift;
+        if (count == buffer.length) {
+            // a single lexeme longer than the window
+            char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+        try {
+            int read;
+            do {
+                read = reader.read(buffer, count, buffer.length - count);
+            } while (read == 0);
+            if (read < 0) {
+                exhausted = true;
+                reader.close();
+            } else {
+                count += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return shift;
+    }
+
+    @Override
+    public int length() {
+        return count;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + count);
+        }
+        return buffer[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(buffer, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count);
+    }
+}
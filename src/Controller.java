@@ -1,190 +1,502 @@
-import java.util.ArrayList;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
 
 public class Controller {
-    private Automaton automaton;
-    private List<Token> result;
+    private static final int DEFAULT_WINDOW = 64 * 1024;
+    private static final int MIN_PARALLEL_CHUNK = 1024 * 1024;
+
+    private final Automaton automaton;
+    private final KeywordTable keywords;
+    // identifier names, may be shared with scanners of other files
+    private final SymbolTable symbols;
+    private TokenBuffer result;
+    private TokenStream tokens;
     private int CurPos;
-    private String input;
+    private CharSequence input;
+    // byte mode only: the UTF-8 source, input is then its bytes and byte positions are turned into char offsets
+    // as tokens are added
+    private Utf8Sequence utf8;
+    private Utf8Sequence.Cursor offsets;
+    // streaming mode only: the window input reads through and the token waiting to be handed out
+    private CharWindow window;
+    private Token pending;
+    // chars the window has dropped, added to window positions to get source offsets
+    private long dropped;
+    // first char of the lexeme being scanned, the window keeps everything from here on
+    private int tokenStart;
+    // a quiet scanner records a missing quote for hasMissingQuote() without printing it
+    private boolean quiet;
+    private boolean missingQuote;
+
+    public Controller(CharSequence input) {
+        this(input, KeywordTable.DEFAULT);
+    }
+
+    public Controller(CharSequence input, KeywordTable keywords) {
+        this(input, keywords, new SymbolTable());
+    }
 
-    public Controller(String input) {
-        this.result = new ArrayList<>();
-        this.automaton = new Automaton();
+    // a Utf8Sequence is scanned in byte mode: a multi-byte char is only ever part of a string literal or a
+    // comment or skipped, so the bytes are read as they are and token values are decoded when asked for
+    public Controller(CharSequence input, KeywordTable keywords, SymbolTable symbols) {
+        this.keywords = keywords;
+        this.symbols = symbols;
+        this.result = new TokenBuffer(input, symbols);
+        this.automaton = Automaton.INSTANCE;
         this.CurPos = 0;
-        this.input = input;
-    }
-
-    // analyze a string and add to result if valid
-    public void analyze(String input) {
-        StringBuilder lexemeBuilder = new StringBuilder();
-        State.STATE currentState = State.STATE.s0;
-        for (char c : input.toCharArray()) {
-            State.STATE nextState = automaton.exercuteTransition(currentState, c);
-            if (nextState != State.STATE.InvalidState) {
-                currentState = nextState;
-                lexemeBuilder.append(c);
-            } else {
-                // Invalid transition encountered
-                break;
+        if (input instanceof Utf8Sequence) {
+            Utf8Sequence source = (Utf8Sequence) input;
+            // positions only need turning into char offsets once there is a multi-byte char
+            if (!source.isAscii()) {
+                this.utf8 = source;
+                this.offsets = source.cursor();
             }
+            this.input = source.bytesAsChars();
+        } else {
+            this.input = input;
         }
+    }
+
+    // streaming mode: input is pulled through a fixed size window as tokens are requested
+    public Controller(Reader reader) {
+        this(reader, DEFAULT_WINDOW, KeywordTable.DEFAULT);
+    }
 
-        State.STATE finalState = currentState;
-        State.STATE initialState = State.STATE.s0;
-        String lexeme = lexemeBuilder.toString();
+    public Controller(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
 
-        // Check if the final state is valid
-        if (automaton.finalStates.containsKey(finalState)) {
-            if (LexicalScanner.isKeyword(lexeme)) {
-                //check keyword
-                result.add(new Token(LexicalScanner.Type.Keyword, lexeme));
+    public Controller(Reader reader, int windowSize, KeywordTable keywords) {
+        this(reader, windowSize, keywords, new SymbolTable());
+    }
+
+    public Controller(Reader reader, int windowSize, KeywordTable keywords, SymbolTable symbols) {
+        this.keywords = keywords;
+        this.symbols = symbols;
+        this.automaton = Automaton.INSTANCE;
+        this.CurPos = 0;
+        this.window = new CharWindow(reader, windowSize);
+        this.input = window;
+    }
+
+    // add the token recognised between start and end
+    private void emit(int state, int start, int end) {
+        LexicalScanner.Type type = automaton.acceptType(state);
+        Keyword keyword = null;
+        Operator operator = null;
+        int symbol = -1;
+        if (type == LexicalScanner.Type.Identifier) {
+            //check keyword, resolved straight from the source chars
+            keyword = keywords.lookup(input, start, end);
+            if (keyword != null) {
+                type = LexicalScanner.Type.Keyword;
             } else {
-                // Get the corresponding token type
-                LexicalScanner.Type tokenType = automaton.finalStates.get(finalState);
-                result.add(new Token(tokenType, lexeme));
+                symbol = symbols.intern(input, start, end);
             }
         } else {
-            // If the final state is not valid, return an invalid token
-            result.add(new Token(LexicalScanner.Type.Invalid, lexeme));
+            if (type == null) {
+                // the automaton stopped in a non final state
+                type = LexicalScanner.Type.Invalid;
+            }
+            // by spelling like the parser used to match them, not only for Operator tokens
+            operator = Operator.lookup(input, start, end);
         }
+        if (utf8 != null) {
+            int charStart = offsets.charIndex(start);
+            result.add(type, keyword, operator, charStart, offsets.charIndex(end) - charStart, symbol);
+        } else if (window == null) {
+            result.add(type, keyword, operator, start, end - start, symbol);
+        } else {
+            // the window moves on, so the value is copied out now unless the symbol table has it
+            long offset = dropped + start;
+            String value = symbol >= 0 ? symbols.name(symbol) : input.subSequence(start, end).toString();
+            pending = new Token(type, value, keyword, operator, offset > Integer.MAX_VALUE ? -1 : (int) offset,
+                    symbol);
+        }
+    }
+
+    // true if there is a char at pos, in streaming mode this reads more input
+    private boolean available(int pos) {
+        return pos < input.length() || refill(pos, tokenStart);
+    }
 
+    // slide the window so pos is loaded, chars before keepFrom are dropped
+    private boolean refill(int pos, int keepFrom) {
+        while (pos >= input.length()) {
+            if (window == null || window.isExhausted()) {
+                return false;
+            }
+            int shift = window.fill(keepFrom);
+            pos -= shift;
+            keepFrom -= shift;
+            CurPos -= shift;
+            tokenStart -= shift;
+            dropped += shift;
+        }
+        return true;
     }
 
-    // scan input
+    // scan input, tokens are kept packed and handed out as Token objects on demand
     public List<Token> scan() {
-        System.out.println("Scanning...\n");
-        while (CurPos < input.length()) {
-            char CurChar = input.charAt(CurPos);
-            if (LexicalScanner.isWhitespace(CurChar)) {
-                CurPos++;
-            } else if (CurChar == '/') {
-                if (peekNextChar() == '/') {
-                    skipSingleLineComment();
-                } else if (peekNextChar() == '*') {
-                    skipMultiLineComment();
-                } else scanOperator();
-            } else if (LexicalScanner.isAlaphabet(CurChar)) {
-                scanIdentifierOrKeyWord();
-            } else if (LexicalScanner.isNumber(CurChar) || CurChar == '.') {
-                scanLiteral();
-            } else if (CurChar == '"') {
-                scanStringLiteral();
-            } else if (LexicalScanner.isSeparator(CurChar)) {
-                scanSeparator();
-            } else if (LexicalScanner.isOperator(CurChar)) {
-                scanOperator();
+        scanTokens();
+        return result.asList();
+    }
+
+    // scan input into the packed token store
+    public TokenBuffer scanTokens() {
+        if (window != null) {
+            throw new IllegalStateException("A streaming Controller is read through getTokenStream()");
+        }
+        while (available(CurPos)) {
+            step();
+        }
+        return result;
+    }
+
+    // scan input in chunks on the common pool, the tokens are the same as from scanTokens()
+    public TokenBuffer scanTokensParallel(int parallelism) {
+        return scanTokensParallel(parallelism, MIN_PARALLEL_CHUNK);
+    }
+
+    TokenBuffer scanTokensParallel(int parallelism, int minChunk) {
+        if (window != null) {
+            throw new IllegalStateException("A streaming Controller is read through getTokenStream()");
+        }
+        int length = input.length();
+        int count = Math.min(parallelism, length / Math.max(minChunk, 1));
+        if (count < 2) {
+            return scanTokens();
+        }
+        // chunks start after a line break where possible, few lines start inside a literal or comment
+        int[] bounds = new int[count + 1];
+        bounds[count] = length;
+        for (int i = 1; i < count; i++) {
+            int bound = Math.max((int) ((long) length * i / count), bounds[i - 1]);
+            while (bound < length && bound > 0 && input.charAt(bound - 1) != '\n') {
+                bound++;
+            }
+            bounds[i] = bound;
+        }
+        Controller[] chunks = new Controller[count];
+        IntStream.range(0, count).parallel().forEach(i -> chunks[i] = speculate(bounds[i], bounds[i + 1]));
+
+        // the true scan position is CurPos, a chunk is reused from the first token both scans start at
+        for (int i = 0; i < count; i++) {
+            TokenBuffer guess = chunks[i].result;
+            int reuseFrom = -1;
+            if (CurPos == bounds[i]) {
+                reuseFrom = 0;
             } else {
-                CurPos++;
+                int candidate = 0;
+                while (CurPos < bounds[i + 1] && available(CurPos)) {
+                    int before = result.size();
+                    step();
+                    if (result.size() > before) {
+                        int start = result.getStart(before);
+                        while (candidate < guess.size() && guess.getStart(candidate) < start) {
+                            candidate++;
+                        }
+                        if (candidate < guess.size() && guess.getStart(candidate) == start) {
+                            reuseFrom = candidate + 1;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (reuseFrom >= 0) {
+                result.addAll(guess, reuseFrom, guess.size());
+                CurPos = chunks[i].CurPos;
+                if (chunks[i].missingQuote) {
+                    missingQuote = true;
+                    if (!quiet) {
+                        System.out.println("Error: Missing closing double quote");
+                    }
+                }
             }
         }
         return result;
     }
 
-    public void scanOperator() {
-        String CurChar = String.valueOf(input.charAt(CurPos));
-        if ((input.charAt(CurPos) == '<' || input.charAt(CurPos) == '>' || input.charAt(CurPos) == '!' || input.charAt(CurPos) == '=') && input.charAt(CurPos + 1) == '=') {
-            CurChar = CurChar + '=';
-            CurPos++;
-        } else if ((input.charAt(CurPos) == '+') && input.charAt(CurPos + 1) == '+') {
-            CurChar = CurChar + '+';
-            CurPos++;
-        } else if ((input.charAt(CurPos) == '-') && input.charAt(CurPos + 1) == '-') {
-            CurChar = CurChar + '-';
-            CurPos++;
+    private Controller speculate(int from, int to) {
+        Controller chunk = new Controller(utf8 != null ? utf8 : input, keywords, symbols).quiet();
+        chunk.CurPos = from;
+        while (chunk.CurPos < to && chunk.available(chunk.CurPos)) {
+            chunk.step();
+        }
+        return chunk;
+    }
+
+    // incremental relex: a quiet scanner that continues at pos, which must be a token start or 0
+    static Controller restartAt(CharSequence input, KeywordTable keywords, int pos) {
+        return restartAt(input, keywords, new SymbolTable(), pos);
+    }
+
+    // tokens of scanners sharing a symbol table can be moved between their buffers
+    static Controller restartAt(CharSequence input, KeywordTable keywords, SymbolTable symbols, int pos) {
+        Controller controller = new Controller(input, keywords, symbols).quiet();
+        controller.CurPos = pos;
+        return controller;
+    }
+
+    // leaves a missing quote to hasMissingQuote() instead of printing it, for callers that report it themselves
+    Controller quiet() {
+        quiet = true;
+        return this;
+    }
+
+    // scan up to and including the next token, false at end of input
+    boolean scanOne() {
+        int before = result.size();
+        while (result.size() == before && available(CurPos)) {
+            step();
+        }
+        return result.size() > before;
+    }
+
+    TokenBuffer getResult() {
+        return result;
+    }
+
+    boolean hasMissingQuote() {
+        return missingQuote;
+    }
+
+    // skip one whitespace char or comment, or scan one token
+    private void step() {
+        tokenStart = CurPos;
+        char CurChar = input.charAt(CurPos);
+        if (LexicalScanner.isWhitespace(CurChar)) {
+            CurPos = BulkSkip.whitespaceEnd(input, CurPos + 1, input.length());
+        } else if (CurChar == '/' && peekNextChar() == '/') {
+            skipSingleLineComment();
+        } else if (CurChar == '/' && peekNextChar() == '*') {
+            skipMultiLineComment();
+        } else {
+            switch (automaton.charClass(CurChar)) {
+                case Automaton.LETTER:
+                case Automaton.UPPER_E:
+                case Automaton.LOWER_E:
+                    scanIdentifierOrKeyWord();
+                    break;
+                case Automaton.DIGIT:
+                case Automaton.DOT:
+                    scanLiteral();
+                    break;
+                case Automaton.QUOTE:
+                    scanStringLiteral();
+                    break;
+                case Automaton.SEPARATOR:
+                    scanSeparator();
+                    break;
+                case Automaton.OTHER:
+                    if (LexicalScanner.isOperator(CurChar)) {
+                        scanOperator();
+                    } else {
+                        CurPos++;
+                    }
+                    break;
+                default:
+                    scanOperator();
+                    break;
+            }
         }
-        analyze(CurChar);
+    }
+
+    // streaming mode: scan until the next token is ready, false at end of input
+    private boolean scanNext() {
+        while (pending == null && available(CurPos)) {
+            step();
+        }
+        return pending != null;
+    }
+
+    // only "<=", ">=", "!=", "==", "++" and "--" are read as two char operators
+    public void scanOperator() {
+        char first = input.charAt(CurPos);
+        int state = automaton.transition(Automaton.START, first);
         CurPos++;
+        if (state == Automaton.INVALID) {
+            // no transition out of s0, the lexeme is empty
+            emit(Automaton.START, tokenStart, tokenStart);
+            return;
+        }
+        if (available(CurPos)) {
+            char second = input.charAt(CurPos);
+            if ((second == '=' && (first == '<' || first == '>' || first == '!' || first == '='))
+                    || ((first == '+' || first == '-') && second == first)) {
+                state = automaton.transition(state, second);
+                CurPos++;
+            }
+        }
+        emit(state, tokenStart, CurPos);
     }
 
     public void scanSeparator() {
-        String CurChar = String.valueOf(input.charAt(CurPos));
-        analyze(CurChar);
+        int state = automaton.transition(Automaton.START, input.charAt(CurPos));
         CurPos++;
+        emit(state, tokenStart, CurPos);
     }
 
     public void scanStringLiteral() {
-        StringBuilder literal = new StringBuilder();
-        literal.append(input.charAt(CurPos));
-        CurPos++;
-        while (CurPos < input.length() && input.charAt(CurPos) != '"') {
-            literal.append(input.charAt(CurPos));
+        int state = Automaton.START;
+        while (available(CurPos)) {
+            int nextState = automaton.transition(state, input.charAt(CurPos));
+            if (nextState == Automaton.INVALID) {
+                break;
+            }
+            state = nextState;
             CurPos++;
         }
-        if (CurPos < input.length() && input.charAt(CurPos) == '"') {
-            literal.append(input.charAt(CurPos));
-            CurPos++;
-            analyze(literal.toString());
+        if (automaton.isAccepting(state)) {
+            emit(state, tokenStart, CurPos);
         } else {
-            System.out.println("Error: Missing closing double quote");
+            missingQuote = true;
+            if (!quiet) {
+                System.out.println("Error: Missing closing double quote");
+            }
         }
     }
 
     public void scanLiteral() {
-        StringBuilder literal = new StringBuilder();
-        while (CurPos < input.length() && (LexicalScanner.isNumber(input.charAt(CurPos)) || input.charAt(CurPos) == '.' || input.charAt(CurPos) == 'E')) {
-            literal.append(input.charAt(CurPos));
+        int state = Automaton.START;
+        while (available(CurPos) && isLiteralChar(input.charAt(CurPos))) {
+            int nextState = automaton.transition(state, input.charAt(CurPos));
+            if (nextState == Automaton.INVALID) {
+                break;
+            }
+            state = nextState;
             CurPos++;
         }
-        analyze(literal.toString());
+        int length = CurPos - tokenStart;
+        // the rest of a malformed literal is dropped
+        while (available(CurPos) && isLiteralChar(input.charAt(CurPos))) {
+            CurPos++;
+        }
+        emit(state, tokenStart, tokenStart + length);
+    }
+
+    // digits, '.' and 'E' make up a number literal
+    private boolean isLiteralChar(char c) {
+        int charClass = automaton.charClass(c);
+        return charClass == Automaton.DIGIT || charClass == Automaton.DOT || charClass == Automaton.UPPER_E;
     }
 
     public void scanIdentifierOrKeyWord() {
-        StringBuilder identifier = new StringBuilder();
-        while (CurPos < input.length() && (LexicalScanner.isAlaphabet(input.charAt(CurPos)) || LexicalScanner.isNumber(input.charAt(CurPos)))) {
-            identifier.append(input.charAt(CurPos));
+        int state = Automaton.START;
+        while (available(CurPos)) {
+            int nextState = automaton.transition(state, input.charAt(CurPos));
+            if (nextState == Automaton.INVALID) {
+                break;
+            }
+            state = nextState;
             CurPos++;
         }
-        analyze(identifier.toString());
+        emit(state, tokenStart, CurPos);
     }
 
     public char peekNextChar() {
-        if (CurPos + 1 < input.length()) {
+        if (available(CurPos + 1)) {
             return input.charAt(CurPos + 1);
         } else {
             return '\0'; // Null character if end of string
         }
     }
 
+    // comments are not kept, the window only has to hold the chars being looked at
     public void skipSingleLineComment() {
-        while (CurPos < input.length() && input.charAt(CurPos) != '\n') {
-            CurPos++;
+        while (CurPos < input.length() || refill(CurPos, CurPos)) {
+            CurPos = BulkSkip.indexOf(input, '\n', CurPos, input.length());
+            if (CurPos < input.length()) {
+                return;
+            }
         }
     }
 
     public void skipMultiLineComment() {
         CurPos += 2; // Skip '/*'
-        while (CurPos < input.length() - 1 && !(input.charAt(CurPos) == '*' && input.charAt(CurPos + 1) == '/')) {
-            CurPos++;
+        while (CurPos + 1 < input.length() || refill(CurPos + 1, CurPos)) {
+            // only a '*' before the last loaded char can be checked for the '/' after it
+            int last = input.length() - 1;
+            int star = BulkSkip.indexOf(input, '*', CurPos, last);
+            if (star == last) {
+                CurPos = last;
+            } else if (input.charAt(star + 1) == '/') {
+                CurPos = star;
+                break;
+            } else {
+                CurPos = star + 1;
+            }
         }
         CurPos += 2; // Skip '*/'
     }
 
-    public Token nextToken() {
-        if (result.isEmpty()) {
-            return new Token(LexicalScanner.Type.EOF, "");
+    public TokenStream getTokenStream() {
+        if (tokens == null) {
+            tokens = new TokenStream(window == null ? result.asList().iterator() : new TokenIterator());
         }
-        return result.remove(0);
+        return tokens;
+    }
+
+    // tokens scanned as they are asked for, in either mode, for a reader on another thread see TokenPipe
+    Iterator<Token> scanningIterator() {
+        return window == null ? new ScanningIterator() : new TokenIterator();
+    }
+
+    public Token nextToken() {
+        return getTokenStream().next();
     }
 
     public Token peekToken() {
-        if (result.isEmpty()) {
-            return new Token(LexicalScanner.Type.EOF, "");
-        }
-        return result.get(0);
+        return getTokenStream().peek(0);
     }
 
     public Token peek2Token() {
-        if (result.isEmpty()) {
-            return new Token(LexicalScanner.Type.EOF, "");
-        }
-        return result.get(1);
+        return getTokenStream().peek(1);
     }
 
     public Token peek3Token() {
-        if (result.isEmpty()) {
-            return new Token(LexicalScanner.Type.EOF, "");
+        return getTokenStream().peek(2);
+    }
+
+    // in-memory mode: scans one token ahead of the reader, tokens scanned earlier are handed out first
+    private class ScanningIterator implements Iterator<Token> {
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+            return index < result.size() || scanOne();
+        }
+
+        @Override
+        public Token next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return result.getToken(index++);
+        }
+    }
+
+    // streaming mode: hands out tokens as they are scanned
+    private class TokenIterator implements Iterator<Token> {
+        @Override
+        public boolean hasNext() {
+            return pending != null || scanNext();
+        }
+
+        @Override
+        public Token next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Token token = pending;
+            pending = null;
+            return token;
         }
-        return result.get(2);
     }
 }
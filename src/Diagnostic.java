@@ -0,0 +1,30 @@
+// a parse error at a token, offset is the token's first char in the source or -1 when it is not known
+public final class Diagnostic {
+    private final String message;
+    private final int token;
+    private final int offset;
+
+    public Diagnostic(String message, int token, int offset) {
+        this.message = message;
+        this.token = token;
+        this.offset = offset;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    // index of the token in the stream the parser read
+    public int getToken() {
+        return token;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return (offset < 0 ? "end of input" : "offset " + offset) + ": " + message;
+    }
+}
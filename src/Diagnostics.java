@@ -0,0 +1,66 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+// collects the errors of a parse in the order they were found, nothing is allocated until the first one
+public final class Diagnostics implements Iterable<Diagnostic> {
+    private List<Diagnostic> errors = Collections.emptyList();
+
+    public void report(String message, int token, int offset) {
+        add(new Diagnostic(message, token, offset));
+    }
+
+    public void add(Diagnostic diagnostic) {
+        if (errors.isEmpty()) {
+            errors = new ArrayList<>();
+        }
+        errors.add(diagnostic);
+    }
+
+    public boolean isEmpty() {
+        return errors.isEmpty();
+    }
+
+    public int size() {
+        return errors.size();
+    }
+
+    public Diagnostic get(int index) {
+        return errors.get(index);
+    }
+
+    public List<Diagnostic> asList() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    @Override
+    public Iterator<Diagnostic> iterator() {
+        return asList().iterator();
+    }
+
+    // "line:column: message" for each error, counted from 1, the source is walked once for errors in offset order
+    public List<String> format(CharSequence source) {
+        List<String> lines = new ArrayList<>(errors.size());
+        int pos = 0;
+        int line = 1;
+        int lineStart = 0;
+        for (Diagnostic diagnostic : errors) {
+            int offset = diagnostic.getOffset() < 0 ? source.length()
+                    : Math.min(diagnostic.getOffset(), source.length());
+            if (offset < pos) {
+                pos = 0;
+                line = 1;
+                lineStart = 0;
+            }
+            for (; pos < offset; pos++) {
+                if (source.charAt(pos) == '\n') {
+                    line++;
+                    lineStart = pos + 1;
+                }
+            }
+            lines.add(line + ":" + (offset - lineStart + 1) + ": " + diagnostic.getMessage());
+        }
+        return lines;
+    }
+}
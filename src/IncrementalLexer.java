@@ -0,0 +1,146 @@
+// keeps the tokens of an edited document up to date by relexing only around each edit
+public class IncrementalLexer {
+    private final KeywordTable keywords;
+    // shared by every relex, so relexed tokens can be spliced into the buffer
+    private final SymbolTable symbols = new SymbolTable();
+    private final StringBuilder document;
+    private final TokenBuffer tokens;
+    private boolean missingQuote;
+
+    public IncrementalLexer(CharSequence text) {
+        this(text, KeywordTable.DEFAULT);
+    }
+
+    public IncrementalLexer(CharSequence text, KeywordTable keywords) {
+        this.keywords = keywords;
+        this.document = new StringBuilder(text);
+        Controller controller = Controller.restartAt(document, keywords, symbols, 0);
+        while (controller.scanOne()) {
+            // scan the whole document once
+        }
+        this.tokens = controller.getResult();
+        this.missingQuote = controller.hasMissingQuote();
+    }
+
+    public CharSequence getText() {
+        return document;
+    }
+
+    // token offsets are into getText() and stay valid until the next edit
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    // true if a string literal runs to the end of the document
+    public boolean hasMissingQuote() {
+        return missingQuote;
+    }
+
+    // replace removed chars at offset with inserted and relex from the last token starting before the edit
+    // until a token starts where an old token started, the tokens after that are only moved by the size change
+    public Change edit(int offset, int removed, CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > document.length()) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", removed " + removed
+                    + ", length " + document.length());
+        }
+        int delta = inserted.length() - removed;
+        int oldEditEnd = offset + removed;
+        int newEditEnd = offset + inserted.length();
+
+        // the scanner keeps no state between tokens, so any old token start before the edit is a safe restart
+        int before = tokens.countBefore(offset);
+        int first = Math.max(before - 1, 0);
+        int restart = before == 0 ? 0 : tokens.getStart(first);
+
+        document.replace(offset, oldEditEnd, inserted.toString());
+        Controller controller = Controller.restartAt(document, keywords, symbols, restart);
+        TokenBuffer relexed = controller.getResult();
+
+        // old tokens from candidate on start at or after the old edit end
+        int candidate = tokens.countBefore(oldEditEnd);
+        int sync = -1;
+        while (controller.scanOne()) {
+            int start = relexed.getStart(relexed.size() - 1);
+            if (start < newEditEnd) {
+                continue;
+            }
+            while (candidate < tokens.size() && tokens.getStart(candidate) + delta < start) {
+                candidate++;
+            }
+            if (candidate < tokens.size() && tokens.getStart(candidate) + delta == start) {
+                // same start after the edit, so the same text and the same tokens from here on
+                sync = candidate;
+                break;
+            }
+        }
+
+        int oldEnd;
+        int newCount;
+        if (sync >= 0) {
+            oldEnd = sync;
+            newCount = relexed.size() - 1;
+        } else {
+            oldEnd = tokens.size();
+            newCount = relexed.size();
+            missingQuote = controller.hasMissingQuote();
+        }
+        // the restart token usually comes out the same, a match only counts while the lexeme is before the edit
+        int same = 0;
+        while (same < newCount && first + same < oldEnd
+                && relexed.getStart(same) + relexed.getLength(same) <= offset
+                && tokens.matches(first + same, relexed, same)) {
+            same++;
+        }
+        tokens.replace(first + same, oldEnd, relexed, same, newCount);
+        tokens.shift(first + newCount, delta);
+        return new Change(first + same, oldEnd - first - same, newCount - same, offset, removed, inserted.length());
+    }
+
+    // the tokens [first, first + removedTokens) were replaced by [first, first + insertedTokens)
+    public static final class Change {
+        private final int first;
+        private final int removedTokens;
+        private final int insertedTokens;
+        private final int offset;
+        private final int removedChars;
+        private final int insertedChars;
+
+        Change(int first, int removedTokens, int insertedTokens, int offset, int removedChars, int insertedChars) {
+            this.first = first;
+            this.removedTokens = removedTokens;
+            this.insertedTokens = insertedTokens;
+            this.offset = offset;
+            this.removedChars = removedChars;
+            this.insertedChars = insertedChars;
+        }
+
+        public int getFirst() {
+            return first;
+        }
+
+        public int getRemovedTokens() {
+            return removedTokens;
+        }
+
+        public int getInsertedTokens() {
+            return insertedTokens;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getRemovedChars() {
+            return removedChars;
+        }
+
+        public int getInsertedChars() {
+            return insertedChars;
+        }
+
+        // how far the tokens after the change moved
+        public int getDelta() {
+            return insertedChars - removedChars;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// keeps the Program tree of an edited document, only the top-level declarations an edit touches are reparsed
+public class IncrementalParser {
+    private final IncrementalLexer lexer;
+    private final ASTNode program;
+    // top-level declarations in token order, together they cover every token
+    private final List<Declaration> declarations;
+    private int reparsed;
+
+    public IncrementalParser(IncrementalLexer lexer) {
+        this.lexer = lexer;
+        this.program = new ASTNode("Program", null);
+        this.declarations = new ArrayList<>();
+        TokenBuffer tokens = lexer.getTokens();
+        for (int start = 0; start < tokens.size(); ) {
+            int end = declarationEnd(tokens, start);
+            declarations.add(new Declaration(start, end));
+            start = end;
+        }
+    }
+
+    public IncrementalLexer getLexer() {
+        return lexer;
+    }
+
+    // edit the document and mark the declarations whose tokens changed for the next parse()
+    public IncrementalLexer.Change edit(int offset, int removed, CharSequence inserted) {
+        IncrementalLexer.Change change = lexer.edit(offset, removed, inserted);
+        if (change.getRemovedTokens() == 0 && change.getInsertedTokens() == 0) {
+            // only whitespace or comments changed
+            return change;
+        }
+        TokenBuffer tokens = lexer.getTokens();
+        int first = change.getFirst();
+        int tokenDelta = change.getInsertedTokens() - change.getRemovedTokens();
+        int newChangeEnd = first + change.getInsertedTokens();
+
+        // resplit from the declaration holding the first changed token until a declaration starts where an old one did
+        int from = indexOf(first);
+        int to = from;
+        List<Declaration> resplit = new ArrayList<>();
+        int start = declarations.isEmpty() ? 0 : declarations.get(from).start;
+        while (start < tokens.size()) {
+            if (start >= newChangeEnd) {
+                while (to < declarations.size() && declarations.get(to).start + tokenDelta < start) {
+                    to++;
+                }
+                if (to < declarations.size() && declarations.get(to).start + tokenDelta == start) {
+                    break;
+                }
+            }
+            int end = declarationEnd(tokens, start);
+            resplit.add(new Declaration(start, end));
+            start = end;
+        }
+        if (start >= tokens.size()) {
+            to = declarations.size();
+        }
+        for (int i = to; i < declarations.size(); i++) {
+            declarations.get(i).move(tokenDelta);
+        }
+        List<Declaration> replaced = declarations.subList(from, to);
+        replaced.clear();
+        replaced.addAll(resplit);
+        return change;
+    }
+
+    // parse the declarations that are new or changed, the other subtrees are reused as they are
+    public ASTNode parse() {
+        TokenBuffer tokens = lexer.getTokens();
+        List<Token> list = tokens.asList();
+        List<ASTNode> children = program.getChildren();
+        children.clear();
+        reparsed = 0;
+        for (Declaration declaration : declarations) {
+            if (declaration.nodes == null) {
+                reparsed++;
+                Parser parser = new Parser(new TokenStream(list.subList(declaration.start, declaration.end)));
+                declaration.nodes = parser.parseProgram().getChildren();
+                declaration.errors = parser.getDiagnostics().isEmpty() ? null : parser.getDiagnostics();
+            }
+            children.addAll(declaration.nodes);
+        }
+        return program;
+    }
+
+    // syntax errors of the last parse() in document order, with their current token indexes and offsets
+    public Diagnostics getDiagnostics() {
+        TokenBuffer tokens = lexer.getTokens();
+        Diagnostics diagnostics = new Diagnostics();
+        for (Declaration declaration : declarations) {
+            if (declaration.errors == null) {
+                continue;
+            }
+            // the token index counts from the declaration, offsets are looked up now as edits move them
+            for (Diagnostic error : declaration.errors) {
+                int token = declaration.start + error.getToken();
+                int offset;
+                if (token < declaration.end) {
+                    offset = tokens.getStart(token);
+                } else {
+                    // ran out of tokens, put at the end of the declaration
+                    offset = tokens.getStart(declaration.end - 1) + tokens.getLength(declaration.end - 1);
+                }
+                diagnostics.report(error.getMessage(), token, offset);
+            }
+        }
+        return diagnostics;
+    }
+
+    // how many declarations the last parse() had to parse
+    public int getReparsedCount() {
+        return reparsed;
+    }
+
+    public int getDeclarationCount() {
+        return declarations.size();
+    }
+
+    // last declaration starting at or before token index
+    private int indexOf(int token) {
+        int low = 0;
+        int high = declarations.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (declarations.get(middle).start <= token) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // a function ends with the "}" closing its body, anything else with a ";" outside braces
+    static int declarationEnd(TokenBuffer tokens, int start) {
+        boolean function = start + 2 < tokens.size() && separator(tokens, start + 2) == '(';
+        int depth = 0;
+        for (int i = start; i < tokens.size(); i++) {
+            char c = separator(tokens, i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth = Math.max(depth - 1, 0);
+                if (depth == 0 && function) {
+                    return i + 1;
+                }
+            } else if (c == ';' && depth == 0) {
+                return i + 1;
+            }
+        }
+        return tokens.size();
+    }
+
+    private static char separator(TokenBuffer tokens, int index) {
+        if (tokens.getType(index) != LexicalScanner.Type.Separator) {
+            return 0;
+        }
+        return tokens.getSource().charAt(tokens.getStart(index));
+    }
+
+    // token span of a top-level declaration, its subtrees and syntax errors once parsed
+    private static final class Declaration {
+        int start;
+        int end;
+        List<ASTNode> nodes;
+        // token indexes relative to start
+        Diagnostics errors;
+
+        Declaration(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void move(int delta) {
+            start += delta;
+            end += delta;
+        }
+    }
+}
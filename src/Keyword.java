@@ -0,0 +1,41 @@
+public enum Keyword {
+    BOOLEAN("boolean"),
+    BREAK("break"),
+    CONTINUE("continue"),
+    ELSE("else"),
+    FOR("for"),
+    FLOAT("float"),
+    IF("if"),
+    INT("int"),
+    RETURN("return"),
+    VOID("void"),
+    WHILE("while"),
+    // dialect keywords, only recognised when enabled in the KeywordTable
+    TRUE("true", true),
+    FALSE("false", true),
+    STRING("string", true);
+
+    private final String text;
+    private final boolean dialect;
+
+    Keyword(String text) {
+        this(text, false);
+    }
+
+    Keyword(String text, boolean dialect) {
+        this.text = text;
+        this.dialect = dialect;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isDialect() {
+        return dialect;
+    }
+
+    public boolean isType() {
+        return this == VOID || this == BOOLEAN || this == INT || this == FLOAT;
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+// collision-free hash of (length, first char, last char) onto the active keywords
+public final class KeywordTable {
+    // comma separated dialect keywords to enable, e.g. -Dvc.keywords=true,false,string
+    public static final String KEYWORDS_PROPERTY = "vc.keywords";
+
+    public static final KeywordTable DEFAULT = withDialect(System.getProperty(KEYWORDS_PROPERTY, ""));
+
+    private final Keyword[] slots;
+    private final int seed;
+    private final int shift;
+    private final int minLength;
+    private final int maxLength;
+
+    public KeywordTable(Set<Keyword> keywords) {
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (Keyword keyword : keywords) {
+            min = Math.min(min, keyword.getText().length());
+            max = Math.max(max, keyword.getText().length());
+        }
+        this.minLength = min;
+        this.maxLength = max;
+
+        // smallest power of two table with a seed that puts every keyword in its own slot
+        for (int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(keywords.size())); bits <= 16; bits++) {
+            Keyword[] table = new Keyword[1 << bits];
+            for (int candidate = 1; candidate < 1 << 16; candidate += 2) {
+                if (fill(table, keywords, candidate, 32 - bits)) {
+                    this.slots = table;
+                    this.seed = candidate;
+                    this.shift = 32 - bits;
+                    return;
+                }
+            }
+        }
+        throw new IllegalArgumentException("No collision-free hash for keywords " + keywords);
+    }
+
+    private static boolean fill(Keyword[] table, Set<Keyword> keywords, int seed, int shift) {
+        Arrays.fill(table, null);
+        for (Keyword keyword : keywords) {
+            String text = keyword.getText();
+            int slot = hash(text.charAt(0), text.charAt(text.length() - 1), text.length(), seed, shift);
+            if (table[slot] != null) {
+                return false;
+            }
+            table[slot] = keyword;
+        }
+        return true;
+    }
+
+    private static int hash(char first, char last, int length, int seed, int shift) {
+        return (((first * 31 + last) * 31 + length) * seed) >>> shift;
+    }
+
+    // the standard keywords plus the named dialect ones
+    public static KeywordTable withDialect(String names) {
+        Set<Keyword> keywords = EnumSet.noneOf(Keyword.class);
+        for (Keyword keyword : Keyword.values()) {
+            if (!keyword.isDialect()) {
+                keywords.add(keyword);
+            }
+        }
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                keywords.add(dialectKeyword(name.trim()));
+            }
+        }
+        return new KeywordTable(keywords);
+    }
+
+    private static Keyword dialectKeyword(String name) {
+        for (Keyword keyword : Keyword.values()) {
+            if (keyword.isDialect() && keyword.getText().equals(name)) {
+                return keyword;
+            }
+        }
+        throw new IllegalArgumentException("Unknown dialect keyword: " + name);
+    }
+
+    // keyword spelled by source[start, end), null if there is none
+    public Keyword lookup(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length < minLength || length > maxLength) {
+            return null;
+        }
+        Keyword keyword = slots[hash(source.charAt(start), source.charAt(end - 1), length, seed, shift)];
+        if (keyword == null || keyword.getText().length() != length) {
+            return null;
+        }
+        String text = keyword.getText();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != source.charAt(start + i)) {
+                return null;
+            }
+        }
+        return keyword;
+    }
+
+    public Keyword lookup(String word) {
+        return lookup(word, 0, word.length());
+    }
+
+    // one bit per active keyword ordinal, so two tables that recognise the same words compare equal
+    int mask() {
+        int mask = 0;
+        for (Keyword keyword : slots) {
+            if (keyword != null) {
+                mask |= 1 << keyword.ordinal();
+            }
+        }
+        return mask;
+    }
+}
@@ -11,24 +11,20 @@ public class LexicalScanner {
         return Character.isWhitespace(token);
     }
     // Check if character is alphabet
-    public static boolean isAlaphabet(char token){return ALPHABET.contains(String.valueOf(token));}
+    public static boolean isAlaphabet(char token){return ALPHABET.indexOf(token) >= 0;}
     // number
-    public static boolean isNumber(char token){return NUMBER.contains(String.valueOf(token));}
+    public static boolean isNumber(char token){return NUMBER.indexOf(token) >= 0;}
     //keyword
     public static boolean isKeyword(String token){
-        for(int i=0;i<KEYWORD.length;i++){
-            if (KEYWORD[i].equals(token))
-                return true;
-        }
-        return false;
+        return KeywordTable.DEFAULT.lookup(token) != null;
     }
     //sep
     public static boolean isSeparator(char token) {
-        return SEPARATOR.contains(String.valueOf(token));
+        return SEPARATOR.indexOf(token) >= 0;
     }
     //ope
     public static boolean isOperator(char token){
-        return OPERATOR.contains(String.valueOf(token));
+        return OPERATOR.indexOf(token) >= 0;
     }
 
 
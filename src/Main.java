@@ -1,12 +1,18 @@
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.ParseException;
 import java.util.List;
 import java.util.Scanner;
 
 public class Main {
-    public static void main(String[] args) throws IOException, ParseException {
+    public static void main(String[] args) throws IOException {
+        // files, directories or globs on the command line are processed in batch
+        if (args.length > 0) {
+            BatchRunner.main(args);
+            return;
+        }
+
         // input
         Scanner scanner = new Scanner(System.in);
 
@@ -14,14 +20,32 @@ public class Main {
         String file = scanner.nextLine();
 
         System.out.println("You entered: " + file);
-        scanner = new Scanner(Paths.get(file), StandardCharsets.UTF_8.name());
-
-        String input = scanner.useDelimiter("\\A").next();
         scanner.close();
 
+        Path path = Paths.get(file);
+        CharSequence input = SourceFile.read(path);
+
+        System.out.println("Scanning...\n");
+        long size = Files.size(path);
+        ScanMetrics.Run run = ScanMetrics.GLOBAL.start(size);
         Controller controller = new Controller(input);
-        List<Token> result = controller.scan();
-        Parser parser = new Parser(controller);
+        // the lexer runs on its own thread and the parser takes its tokens as they come
+        Parser parser;
+        SyntaxTree ast;
+        try (TokenPipe pipe = TokenPipe.start(controller, file, size)) {
+            ScanEvents.Parse parseEvent = ScanEvents.parse();
+            parser = new Parser(new TokenStream(pipe), new Diagnostics(), file);
+            ast = parser.parseTree();
+            // parse time is the parser's wall time, waits for tokens included, scan time and allocation are
+            // measured on the lexer thread
+            run.parsed(ast);
+            pipe.awaitEnd();
+            run.scanned(controller.getResult(), pipe.getScanNanos(), pipe.getAllocatedBytes());
+            if (parseEvent != null) {
+                parseEvent.finish(file, size, controller.getResult().size(), ast, parser.getDiagnostics());
+            }
+        }
+        List<Token> result = controller.getResult().asList();
 
         //output vctok
         File vctokPath = new File("C:\\Users\\HELLO\\Downloads\\OutputResult.vctok");
@@ -29,25 +53,23 @@ public class Main {
         for (Token token : result) {
             writer.write(token.getType().toString() + " " + token.getValue() + "\n");
         }
-        StringBuilder builder = new StringBuilder();
-        // output vcps
-        try {
-            ASTNode ast = parser.parseProgram();
-            builder.append(ast.toString());
-        } catch (ParseException e) {
-            System.out.println(e.getMessage());
+        for (String error : parser.getDiagnostics().format(input)) {
+            System.out.println(error);
         }
-        //output vcps
+        //output vcps, streamed from the tree
         File vcpsPath = new File("C:\\Users\\HELLO\\Downloads\\OutputVCPSResult.vcps");
-        FileWriter fileWriter = new FileWriter(vcpsPath);
-        fileWriter.write(builder.toString());
+        BufferedWriter fileWriter = new BufferedWriter(new FileWriter(vcpsPath));
+        new AstWriter(fileWriter).write(ast);
 
         writer.flush();
         fileWriter.flush();
         writer.close();
         fileWriter.close();
+        run.serialized();
+        run.end();
 
         System.out.println("File Scanned Completely");
+        System.out.println(run);
     }
 
 }
@@ -0,0 +1,83 @@
+public enum NodeKind {
+    PROGRAM("Program"),
+    FUNC_DECL("FuncDecl"),
+    VAR_DECL("VarDecl"),
+    INIT_DECLARATOR_LIST("InitDeclaratorList"),
+    INIT_DECLARATOR("InitDeclarator"),
+    DECLARATOR("Declarator"),
+    INITIALIZER("Initializer"),
+    TYPE("Type"),
+    PARA_LIST("ParaList"),
+    PROPER_PARA_LIST("ProperParaList"),
+    PARA_DECL("ParaDecl"),
+    COMPOUND_STMT("CompoundStmt"),
+    IF_STMT("IfStmt"),
+    FOR_STMT("ForStmt"),
+    WHILE_STMT("WhileStmt"),
+    BREAK_STMT("BreakStmt"),
+    CONTINUE_STMT("ContinueStmt"),
+    RETURN_STMT("ReturnStmt"),
+    EXPR_STMT("ExprStmt"),
+    ASSIGN_EXPR("AssignExpr"),
+    OR_EXPR("OrExpr"),
+    AND_EXPR("AndExpr"),
+    EQUALITY_EXPR("EqualityExpr"),
+    REL_EXPR("RelExpr"),
+    ADD_EXPR("AddExpr"),
+    MUL_EXPR("MulExpr"),
+    UNARY_EXPR("UnaryExpr"),
+    IDENTIFIER("Identifier"),
+    INT_LITERAL("IntLiteral"),
+    REAL_LITERAL("RealLiteral"),
+    STR_LITERAL("StrLiteral"),
+    ARG_LIST("ArgList"),
+    PROPER_ARG_LIST("ProperArgList"),
+    // markers never have a value or children, every use shares one node
+    LEFT_PAREN("(", true),
+    RIGHT_PAREN(")", true),
+    LEFT_BRACE("{", true),
+    RIGHT_BRACE("}", true),
+    LEFT_BRACKET("[", true),
+    RIGHT_BRACKET("]", true),
+    SEMICOLON(";", true),
+    COMMA(",", true),
+    EQUALS("=", true),
+    ELSE_STMT("ElseStmt", true),
+    // what the parser skipped to recover from a syntax error, see Parser.getDiagnostics()
+    ERROR("Error");
+
+    private final String label;
+    private final boolean marker;
+
+    NodeKind(String label) {
+        this(label, false);
+    }
+
+    NodeKind(String label, boolean marker) {
+        this.label = label;
+        this.marker = marker;
+    }
+
+    // the node type as ASTNode and toString() show it
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isMarker() {
+        return marker;
+    }
+
+    // node kind of a literal token
+    public static NodeKind ofLiteral(LexicalScanner.Type type) {
+        switch (type) {
+            case IntLiteral:
+                return INT_LITERAL;
+            case RealLiteral:
+                return REAL_LITERAL;
+            case StrLiteral:
+                return STR_LITERAL;
+            default:
+                throw new IllegalArgumentException("Not a literal: " + type);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+// operators of the expression grammar, resolved by the scanner so the parser never compares lexemes
+//
+// binding power, loosest first:
+//   1 assignment-expr "="
+//   2 cond-or-expr    "||"
+//   3 cond-and-expr   "&&"
+//   4 equality-expr   "==" "!="
+//   5 rel-expr        "<" "<=" ">" ">="
+//   6 additive-expr   "+" "-"
+//   7 mult-expr       "*" "/"
+//   unary-expr        "++" "--" "!" (prefix only, no binding power)
+public enum Operator {
+    ASSIGN("=", 1, NodeKind.ASSIGN_EXPR),
+    OR("||", 2, NodeKind.OR_EXPR),
+    AND("&&", 3, NodeKind.AND_EXPR),
+    EQUAL("==", 4, NodeKind.EQUALITY_EXPR),
+    NOT_EQUAL("!=", 4, NodeKind.EQUALITY_EXPR),
+    LESS("<", 5, NodeKind.REL_EXPR),
+    LESS_EQUAL("<=", 5, NodeKind.REL_EXPR),
+    GREATER(">", 5, NodeKind.REL_EXPR),
+    GREATER_EQUAL(">=", 5, NodeKind.REL_EXPR),
+    PLUS("+", 6, NodeKind.ADD_EXPR),
+    MINUS("-", 6, NodeKind.ADD_EXPR),
+    TIMES("*", 7, NodeKind.MUL_EXPR),
+    DIVIDE("/", 7, NodeKind.MUL_EXPR),
+    INCREMENT("++", 0, NodeKind.UNARY_EXPR),
+    DECREMENT("--", 0, NodeKind.UNARY_EXPR),
+    NOT("!", 0, NodeKind.UNARY_EXPR);
+
+    // binding power of the loosest binary operator, a whole expression is parsed from here
+    public static final int LOWEST = 1;
+
+    private static final Operator[] SINGLE = new Operator[128];
+    private static final Operator[] VALUES = values();
+
+    static {
+        for (Operator operator : VALUES) {
+            if (operator.text.length() == 1) {
+                SINGLE[operator.text.charAt(0)] = operator;
+            }
+        }
+    }
+
+    private final String text;
+    private final int bindingPower;
+    private final NodeKind kind;
+
+    Operator(String text, int bindingPower, NodeKind kind) {
+        this.text = text;
+        this.bindingPower = bindingPower;
+        this.kind = kind;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    // 0 for the prefix operators
+    public int getBindingPower() {
+        return bindingPower;
+    }
+
+    public boolean isPrefix() {
+        return bindingPower == 0;
+    }
+
+    // kind of the node the parser makes for the operator
+    public NodeKind getKind() {
+        return kind;
+    }
+
+    // operator spelled by source[start, end), null if there is none
+    public static Operator lookup(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length == 1) {
+            char c = source.charAt(start);
+            return c < SINGLE.length ? SINGLE[c] : null;
+        }
+        if (length == 2) {
+            char first = source.charAt(start);
+            char second = source.charAt(start + 1);
+            for (Operator operator : VALUES) {
+                if (operator.text.length() == 2 && operator.text.charAt(0) == first
+                        && operator.text.charAt(1) == second) {
+                    return operator;
+                }
+            }
+        }
+        return null;
+    }
+}
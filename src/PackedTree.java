@@ -0,0 +1,15 @@
+// read access to a packed AST, node handles work as in SyntaxTree
+public interface PackedTree {
+    int getRoot();
+
+    // number of nodes with a slot of their own
+    int size();
+
+    NodeKind getKind(int node);
+
+    String getValue(int node);
+
+    int getChildCount(int node);
+
+    int getChild(int node, int index);
+}
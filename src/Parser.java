@@ -1,16 +1,43 @@
-import java.text.ParseException;
-
+// syntax errors are reported to the Diagnostics and the parse goes on, see recover()
 public class Parser {
-    private Controller lexer;
+    private TokenStream tokens;
     private Token currentToken;
+    // the last token consumed, currentToken is the next one
+    private Token previousToken;
+    private SyntaxTree.Builder tree;
+    private final Diagnostics diagnostics;
+    // an error was reported and the tokens up to the next synchronization point are suspect
+    private boolean panic;
+    // names the input in ScanEvents, may be null
+    private final String sourceName;
 
     public Parser(Controller lexer) {
-        this.lexer = lexer;
-        this.currentToken = lexer.peekToken();
+        this(lexer.getTokenStream());
+    }
+
+    public Parser(TokenStream tokens) {
+        this(tokens, new Diagnostics());
+    }
+
+    public Parser(TokenStream tokens, Diagnostics diagnostics) {
+        this(tokens, diagnostics, null);
+    }
+
+    public Parser(TokenStream tokens, Diagnostics diagnostics, String sourceName) {
+        this.tokens = tokens;
+        this.diagnostics = diagnostics;
+        this.sourceName = sourceName;
+        this.currentToken = tokens.next();
+    }
+
+    // errors of the last parse, empty if the input was well formed
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
     }
 
     private void advance() {
-        currentToken = lexer.nextToken();
+        previousToken = currentToken;
+        currentToken = tokens.next();
     }
 
     private boolean match(LexicalScanner.Type type) {
@@ -21,108 +48,165 @@ public class Parser {
         return false;
     }
 
-    private void expect(LexicalScanner.Type type) throws ParseException {
+    private void expect(LexicalScanner.Type type) {
         if (!match(type)) {
-            throw new ParseException("Expected " + type + " but found " + currentToken.type, 0);
+            error("Expected " + type + " but found " + currentToken.type);
         }
     }
 
+    // reports at the current token, unless an earlier error has not been recovered from yet
+    private void error(String message) {
+        if (!panic) {
+            panic = true;
+            diagnostics.report(message, currentIndex(), currentToken.getStart());
+        }
+    }
+
+    // panic mode: skip to a synchronization point and put an Error node where the broken construct was
+    // a declaration resumes at the next type keyword, a statement just past a ";" or at a "}",
+    // a type keyword or a keyword that starts a statement
+    private int recover(int node, boolean declaration) {
+        if (!panic) {
+            return node;
+        }
+        while (!atEnd() && !isType(currentToken)) {
+            if (!declaration) {
+                if (isSeparator("}") || startsStatement(currentToken)) {
+                    break;
+                }
+                if (isSeparator(";")) {
+                    advance();
+                    break;
+                }
+            }
+            advance();
+        }
+        panic = false;
+        return tree.node(NodeKind.ERROR, null);
+    }
+
+    // index of currentToken in the input, the token count once the input has run out
+    private int currentIndex() {
+        return atEnd() ? tokens.position() : tokens.position() - 1;
+    }
+
+    private boolean atEnd() {
+        return currentToken.getType() == LexicalScanner.Type.EOF;
+    }
+
+    private boolean isSeparator(String separator) {
+        return currentToken.getType() == LexicalScanner.Type.Separator && currentToken.value.equals(separator);
+    }
+
+    private boolean startsStatement(Token token) {
+        Keyword keyword = token.getKeyword();
+        return keyword == Keyword.IF || keyword == Keyword.FOR || keyword == Keyword.WHILE
+                || keyword == Keyword.BREAK || keyword == Keyword.CONTINUE || keyword == Keyword.RETURN;
+    }
+
+    // the tree as ASTNode objects, see parseTree()
+    public ASTNode parseProgram() {
+        return parseTree().toASTNode();
+    }
+
     // program -> ( func-decl | var-decl )*
-    public ASTNode parseProgram() throws ParseException {
-        ASTNode programNode = new ASTNode("Program", null);
-        while (currentToken.getType() != LexicalScanner.Type.EOF) {
+    public SyntaxTree parseTree() {
+        tree = new SyntaxTree.Builder();
+        int programNode = tree.node(NodeKind.PROGRAM, null);
+        for (int declaration = 0; !atEnd(); declaration++) {
+            ScanEvents.DeclarationParse event = ScanEvents.declarationParse();
+            Token first = currentToken;
+            int firstToken = currentIndex();
+            int nodes = tree.size();
             if (isType(currentToken)) {
-                advance();
-                if (lexer.peekToken().getType() == LexicalScanner.Type.Identifier) {
-                    if (isFunctionDeclaration()) {
-                        programNode.addChild(parseFuncDecl());
-                    } else {
-                        programNode.addChild(parseVarDecl());
-                    }
+                if (tokens.peek(0).getType() == LexicalScanner.Type.Identifier && isFunctionDeclaration()) {
+                    tree.addChild(programNode, recover(parseFuncDecl(), true));
                 } else {
-                    programNode.addChild(parseVarDecl());
+                    tree.addChild(programNode, recover(parseVarDecl(), true));
                 }
             } else {
-                throw new ParseException("Unexpected token: " + currentToken.value, 0);
+                error("Unexpected token: " + currentToken.value);
+                tree.addChild(programNode, recover(SyntaxTree.NONE, true));
+            }
+            if (event != null) {
+                event.finish(sourceName, declaration, first, firstToken, previousToken, currentIndex(),
+                        tree.size() - nodes);
             }
         }
-        return programNode;
+        return tree.build(programNode);
     }
 
     private boolean isFunctionDeclaration() {
-        Token nextToken = lexer.peek2Token();
+        Token nextToken = tokens.peek(1);
         return nextToken != null && nextToken.value.equals("(");
     }
 
     private boolean isType(Token token) {
-        return token.value.equals("void") ||
-                token.value.equals("boolean") ||
-                token.value.equals("int") ||
-                token.value.equals("float");
+        return token.getKeyword() != null && token.getKeyword().isType();
     }
 
     // func-decl -> type identifier para-list compound-stmt
-    private ASTNode parseFuncDecl() throws ParseException {
-        ASTNode funcDeclNode = new ASTNode("FuncDecl", null);
-        funcDeclNode.addChild(parseType());
+    private int parseFuncDecl() {
+        int funcDeclNode = tree.node(NodeKind.FUNC_DECL, null);
+        tree.addChild(funcDeclNode, parseType());
         advance();
-        funcDeclNode.addChild(new ASTNode("Identifier", currentToken.value));
+        tree.addChild(funcDeclNode, tree.node(NodeKind.IDENTIFIER, currentToken.value, currentToken.symbol));
         expect(LexicalScanner.Type.Identifier);
-        funcDeclNode.addChild(parseParaList());
-        funcDeclNode.addChild(parseCompoundStmt());
+        tree.addChild(funcDeclNode, parseParaList());
+        tree.addChild(funcDeclNode, parseCompoundStmt());
         return funcDeclNode;
     }
 
     // var-decl -> type init-declarator-list ";"
-    private ASTNode parseVarDecl() throws ParseException {
-        ASTNode varDeclNode = new ASTNode("VarDecl", null);
-        varDeclNode.addChild(parseType());
+    private int parseVarDecl() {
+        int varDeclNode = tree.node(NodeKind.VAR_DECL, null);
+        tree.addChild(varDeclNode, parseType());
         advance();
-        varDeclNode.addChild(parseInitDeclaratorList());
+        tree.addChild(varDeclNode, parseInitDeclaratorList());
         advance();
         expect(LexicalScanner.Type.Separator);
         return varDeclNode;
     }
 
     // init-declarator-list-> init-declarator ( "," init-declarator )*
-    private ASTNode parseInitDeclaratorList() throws ParseException {
-        ASTNode initDeclaratorListNode = new ASTNode("InitDeclaratorList", null);
-        initDeclaratorListNode.addChild(parseInitDeclarator());
-        while (lexer.peek2Token().value.equals(",")) {
+    private int parseInitDeclaratorList() {
+        int initDeclaratorListNode = tree.node(NodeKind.INIT_DECLARATOR_LIST, null);
+        tree.addChild(initDeclaratorListNode, parseInitDeclarator());
+        while (tokens.peek(1).value.equals(",")) {
             advance();
-            initDeclaratorListNode.addChild(new ASTNode(",", null));
+            tree.addChild(initDeclaratorListNode, SyntaxTree.marker(NodeKind.COMMA));
             advance(); // 1
-            initDeclaratorListNode.addChild(parseInitDeclarator());
+            tree.addChild(initDeclaratorListNode, parseInitDeclarator());
         }
         return initDeclaratorListNode;
     }
 
     // init-declarator -> declarator ( "=" initialiser )?
-    private ASTNode parseInitDeclarator() throws ParseException {
-        ASTNode initDeclaratorNode = new ASTNode("InitDeclarator", null);
-        initDeclaratorNode.addChild(parseDeclarator());
-        if (lexer.peek2Token().value.equals("=")) {
+    private int parseInitDeclarator() {
+        int initDeclaratorNode = tree.node(NodeKind.INIT_DECLARATOR, null);
+        tree.addChild(initDeclaratorNode, parseDeclarator());
+        if (tokens.peek(1).value.equals("=")) {
             advance();
-            initDeclaratorNode.addChild(new ASTNode("=", null));
+            tree.addChild(initDeclaratorNode, SyntaxTree.marker(NodeKind.EQUALS));
             advance(); //2
-            initDeclaratorNode.addChild(parseInitialiser());
+            tree.addChild(initDeclaratorNode, parseInitialiser());
         }
         return initDeclaratorNode;
     }
 
     // declarator -> identifier
     //             | identifier "[" INTLITERAL? "]"
-    private ASTNode parseDeclarator() throws ParseException {
-        ASTNode declaratorNode = new ASTNode("Declarator", currentToken.value);
-        if (lexer.peek2Token().value.equals("[")) {
+    private int parseDeclarator() {
+        int declaratorNode = tree.node(NodeKind.DECLARATOR, currentToken.value, currentToken.symbol);
+        if (tokens.peek(1).value.equals("[")) {
             advance();
-            declaratorNode.addChild(new ASTNode("[", null));
-            if (lexer.peek2Token().type.equals(LexicalScanner.Type.IntLiteral)) {
+            tree.addChild(declaratorNode, SyntaxTree.marker(NodeKind.LEFT_BRACKET));
+            if (tokens.peek(1).type.equals(LexicalScanner.Type.IntLiteral)) {
                 advance();
-                declaratorNode.addChild(new ASTNode("IntLiteral", currentToken.value));
+                tree.addChild(declaratorNode, tree.node(NodeKind.INT_LITERAL, currentToken.value));
                 advance();
             }
-            declaratorNode.addChild(new ASTNode("]", null));
+            tree.addChild(declaratorNode, SyntaxTree.marker(NodeKind.RIGHT_BRACKET));
             expect(LexicalScanner.Type.Separator);
         }
         return declaratorNode;
@@ -130,84 +214,85 @@ public class Parser {
 
     // initialiser -> expr
     //              | "{" expr ( "," expr )* "}"
-    private ASTNode parseInitialiser() throws ParseException {
-        ASTNode initialiserNode = new ASTNode("Initializer", null);
+    private int parseInitialiser() {
+        int initialiserNode = tree.node(NodeKind.INITIALIZER, null);
         if (currentToken.value.equals("{")) {
-            initialiserNode.addChild(new ASTNode("{", null));
+            tree.addChild(initialiserNode, SyntaxTree.marker(NodeKind.LEFT_BRACE));
             advance();
-            initialiserNode.addChild(parseExpr());
+            tree.addChild(initialiserNode, parseExpr());
             advance();
             while (currentToken.value.equals(",")) {
                 advance();
-                initialiserNode.addChild(parseExpr());
+                tree.addChild(initialiserNode, parseExpr());
                 advance();
             }
-            initialiserNode.addChild(new ASTNode("}", null));
+            tree.addChild(initialiserNode, SyntaxTree.marker(NodeKind.RIGHT_BRACE));
             expect(LexicalScanner.Type.Separator);
         } else {
-            initialiserNode.addChild(parseExpr());
+            tree.addChild(initialiserNode, parseExpr());
         }
         return initialiserNode;
     }
 
     // type -> void | boolean | int | float
-    private ASTNode parseType() throws ParseException {
+    private int parseType() {
         if (!isType(currentToken)) {
-            throw new ParseException("Expected type but found " + currentToken.type, 0);
+            error("Expected type but found " + currentToken.type);
+            return tree.node(NodeKind.ERROR, null);
         }
-        return new ASTNode("Type", currentToken.value);
+        return tree.node(NodeKind.TYPE, currentToken.value);
     }
 
     // para-list -> "(" proper-para-list? ")"
-    private ASTNode parseParaList() throws ParseException {
-        ASTNode paraListNode = new ASTNode("ParaList", null);
-        paraListNode.addChild(new ASTNode("(", null));
+    private int parseParaList() {
+        int paraListNode = tree.node(NodeKind.PARA_LIST, null);
+        tree.addChild(paraListNode, SyntaxTree.marker(NodeKind.LEFT_PAREN));
         expect(LexicalScanner.Type.Separator);
         if (!currentToken.value.equals(")")) {
-            paraListNode.addChild(parseProperParaList());
+            tree.addChild(paraListNode, parseProperParaList());
             advance();;
         }
-        paraListNode.addChild(new ASTNode(")", null));
+        tree.addChild(paraListNode, SyntaxTree.marker(NodeKind.RIGHT_PAREN));
         expect(LexicalScanner.Type.Separator);
         return paraListNode;
     }
 
     //proper-para-list -> para-decl ( "," para-decl )*
-    private ASTNode parseProperParaList() throws ParseException {
-        ASTNode properParaListNode = new ASTNode("ProperParaList", null);
-        properParaListNode.addChild(parseParaDecl());
-        while (lexer.peek2Token().value.equals(",")) {
+    private int parseProperParaList() {
+        int properParaListNode = tree.node(NodeKind.PROPER_PARA_LIST, null);
+        tree.addChild(properParaListNode, parseParaDecl());
+        while (tokens.peek(1).value.equals(",")) {
             advance();
-            properParaListNode.addChild(new ASTNode(",", null));
+            tree.addChild(properParaListNode, SyntaxTree.marker(NodeKind.COMMA));
             advance();
-            properParaListNode.addChild(parseParaDecl());
+            tree.addChild(properParaListNode, parseParaDecl());
         }
         return properParaListNode;
     }
 
     // para-decl -> type declarator
-    private ASTNode parseParaDecl() throws ParseException {
-        ASTNode paraDeclNode = new ASTNode("ParaDecl", null);
-        paraDeclNode.addChild(parseType());
+    private int parseParaDecl() {
+        int paraDeclNode = tree.node(NodeKind.PARA_DECL, null);
+        tree.addChild(paraDeclNode, parseType());
         advance();
-        paraDeclNode.addChild(parseDeclarator());
+        tree.addChild(paraDeclNode, parseDeclarator());
         return paraDeclNode;
     }
 
     // compound-stmt -> "{" var-decl* stmt* "}"
-    private ASTNode parseCompoundStmt() throws ParseException {
-        ASTNode compoundStmtNode = new ASTNode("CompoundStmt", null);
-        compoundStmtNode.addChild(new ASTNode("{", null));
+    private int parseCompoundStmt() {
+        int compoundStmtNode = tree.node(NodeKind.COMPOUND_STMT, null);
+        tree.addChild(compoundStmtNode, SyntaxTree.marker(NodeKind.LEFT_BRACE));
         expect(LexicalScanner.Type.Separator);
-        while (!currentToken.value.equals("}")) {
+        while (!currentToken.value.equals("}") && !atEnd()) {
             while (isType(currentToken)) {
-                compoundStmtNode.addChild(parseVarDecl());
+                tree.addChild(compoundStmtNode, recover(parseVarDecl(), false));
             }
-            while (currentToken.getType() != LexicalScanner.Type.Separator || !currentToken.value.equals("}")) {
-                compoundStmtNode.addChild(parseStmt());
+            while (!isSeparator("}") && !isType(currentToken) && !atEnd()) {
+                tree.addChild(compoundStmtNode, recover(parseStmt(), false));
             }
         }
-        compoundStmtNode.addChild(new ASTNode("}", null));
+        tree.addChild(compoundStmtNode, SyntaxTree.marker(NodeKind.RIGHT_BRACE));
         expect(LexicalScanner.Type.Separator);
         return compoundStmtNode;
     }
@@ -220,28 +305,34 @@ public class Parser {
     //| continue-stmt
     //| return-stmt
     //| expr-stmt
-    private ASTNode parseStmt() throws ParseException {
-        ASTNode stmtNode;
-        switch (currentToken.value) {
-            case "{":
+    private int parseStmt() {
+        int stmtNode;
+        Keyword keyword = currentToken.getKeyword();
+        if (keyword == null) {
+            if (currentToken.value.equals("{")) {
                 stmtNode = parseCompoundStmt();
-                break;
-            case "if":
+            } else {
+                stmtNode = parseExprStmt();
+            }
+            return stmtNode;
+        }
+        switch (keyword) {
+            case IF:
                 stmtNode = parseIfStmt();
                 break;
-            case "for":
+            case FOR:
                 stmtNode = parseForStmt();
                 break;
-            case "while":
+            case WHILE:
                 stmtNode = parseWhileStmt();
                 break;
-            case "break":
+            case BREAK:
                 stmtNode = parseBreakStmt();
                 break;
-            case "continue":
+            case CONTINUE:
                 stmtNode = parseContinueStmt();
                 break;
-            case "return":
+            case RETURN:
                 stmtNode = parseReturnStmt();
                 break;
             default:
@@ -252,203 +343,139 @@ public class Parser {
     }
 
     // if-stmt -> if "(" expr ")" stmt ( else stmt )?
-    private ASTNode parseIfStmt() throws ParseException {
-        ASTNode ifStmtNode = new ASTNode("IfStmt", null);
+    private int parseIfStmt() {
+        int ifStmtNode = tree.node(NodeKind.IF_STMT, null);
         expect(LexicalScanner.Type.Keyword);
-        ifStmtNode.addChild(new ASTNode("(", null));
+        tree.addChild(ifStmtNode, SyntaxTree.marker(NodeKind.LEFT_PAREN));
         expect(LexicalScanner.Type.Separator);
-        ifStmtNode.addChild(parseExpr());
-        ifStmtNode.addChild(new ASTNode(")", null));
+        tree.addChild(ifStmtNode, parseExpr());
+        tree.addChild(ifStmtNode, SyntaxTree.marker(NodeKind.RIGHT_PAREN));
         expect(LexicalScanner.Type.Separator);
-        ifStmtNode.addChild(parseStmt());
-        advance();
-        if (currentToken.value.equals("else")) {
-            ifStmtNode.addChild(new ASTNode("ElseStmt", null));
+        // parseStmt leaves the token after the statement current, an else or the next statement
+        tree.addChild(ifStmtNode, parseStmt());
+        if (currentToken.getKeyword() == Keyword.ELSE) {
+            tree.addChild(ifStmtNode, SyntaxTree.marker(NodeKind.ELSE_STMT));
             advance();
-            ifStmtNode.addChild(parseStmt());
+            tree.addChild(ifStmtNode, parseStmt());
         }
         return ifStmtNode;
     }
 
     // for-stmt -> for "(" expr? ";" expr? ";" expr? ")" stmt
-    private ASTNode parseForStmt() throws ParseException {
-        ASTNode forStmtNode = new ASTNode("ForStmt", null);
+    private int parseForStmt() {
+        int forStmtNode = tree.node(NodeKind.FOR_STMT, null);
         expect(LexicalScanner.Type.Keyword);
-        forStmtNode.addChild(new ASTNode("(", null));
+        tree.addChild(forStmtNode, SyntaxTree.marker(NodeKind.LEFT_PAREN));
         expect(LexicalScanner.Type.Separator);
-        while (!currentToken.value.equals(";")) {
-            forStmtNode.addChild(parseExpr());
-        }
-        forStmtNode.addChild(new ASTNode(";", null));
+        parseExprsUntil(forStmtNode, ";");
+        tree.addChild(forStmtNode, SyntaxTree.marker(NodeKind.SEMICOLON));
         expect(LexicalScanner.Type.Separator);
-        while (!currentToken.value.equals(";")) {
-            forStmtNode.addChild(parseExpr());
-        }
-        forStmtNode.addChild(new ASTNode(";", null));
+        parseExprsUntil(forStmtNode, ";");
+        tree.addChild(forStmtNode, SyntaxTree.marker(NodeKind.SEMICOLON));
         expect(LexicalScanner.Type.Separator);
-        while (!currentToken.value.equals(")")) {
-            forStmtNode.addChild(parseExpr());
-        }
-        forStmtNode.addChild(new ASTNode(")", null));
+        parseExprsUntil(forStmtNode, ")");
+        tree.addChild(forStmtNode, SyntaxTree.marker(NodeKind.RIGHT_PAREN));
         expect(LexicalScanner.Type.Separator); // )
-        forStmtNode.addChild(parseStmt());
+        tree.addChild(forStmtNode, parseStmt());
         return forStmtNode;
     }
 
+    // expressions up to the end token, stops at one that does not parse
+    private void parseExprsUntil(int parent, String end) {
+        while (!currentToken.value.equals(end) && !atEnd()) {
+            int position = tokens.position();
+            tree.addChild(parent, parseExpr());
+            if (tokens.position() == position) {
+                break;
+            }
+        }
+    }
+
     // while-stmt -> while "(" expr ")" stmt
-    private ASTNode parseWhileStmt() throws ParseException {
-        ASTNode whileStmtNode = new ASTNode("WhileStmt", null);
+    private int parseWhileStmt() {
+        int whileStmtNode = tree.node(NodeKind.WHILE_STMT, null);
         expect(LexicalScanner.Type.Keyword); // while
-        whileStmtNode.addChild(new ASTNode("(", null));
+        tree.addChild(whileStmtNode, SyntaxTree.marker(NodeKind.LEFT_PAREN));
         expect(LexicalScanner.Type.Separator); // (
-        whileStmtNode.addChild(parseExpr());
-        whileStmtNode.addChild(new ASTNode(")", null));
+        tree.addChild(whileStmtNode, parseExpr());
+        tree.addChild(whileStmtNode, SyntaxTree.marker(NodeKind.RIGHT_PAREN));
         expect(LexicalScanner.Type.Separator); // )
-        whileStmtNode.addChild(parseStmt());
+        tree.addChild(whileStmtNode, parseStmt());
         return whileStmtNode;
     }
 
     // break-stmt -> break ";"
-    private ASTNode parseBreakStmt() throws ParseException {
-        ASTNode breakStmtNode = new ASTNode("BreakStmt", null);
+    private int parseBreakStmt() {
+        int breakStmtNode = tree.node(NodeKind.BREAK_STMT, null);
         expect(LexicalScanner.Type.Keyword);
-        breakStmtNode.addChild(new ASTNode(";", null));
+        tree.addChild(breakStmtNode, SyntaxTree.marker(NodeKind.SEMICOLON));
         expect(LexicalScanner.Type.Separator); // ;
         return breakStmtNode;
     }
 
     // continue-stmt -> continue ";"
-    private ASTNode parseContinueStmt() throws ParseException {
-        ASTNode continueStmtNode = new ASTNode("ContinueStmt", null);
+    private int parseContinueStmt() {
+        int continueStmtNode = tree.node(NodeKind.CONTINUE_STMT, null);
         expect(LexicalScanner.Type.Keyword);
-        continueStmtNode.addChild(new ASTNode(";", null));
+        tree.addChild(continueStmtNode, SyntaxTree.marker(NodeKind.SEMICOLON));
         expect(LexicalScanner.Type.Separator); // ;
         return continueStmtNode;
     }
 
     // return-stmt -> return expr? ";"
-    private ASTNode parseReturnStmt() throws ParseException {
-        ASTNode returnStmtNode = new ASTNode("ReturnStmt", null);
+    private int parseReturnStmt() {
+        int returnStmtNode = tree.node(NodeKind.RETURN_STMT, null);
         expect(LexicalScanner.Type.Keyword);
         if (currentToken.getType() != LexicalScanner.Type.Separator) {
-            returnStmtNode.addChild(parseExpr());
+            tree.addChild(returnStmtNode, parseExpr());
             advance();
         }
-        returnStmtNode.addChild(new ASTNode(";", null));
+        tree.addChild(returnStmtNode, SyntaxTree.marker(NodeKind.SEMICOLON));
         expect(LexicalScanner.Type.Separator); // ;
         return returnStmtNode;
     }
 
     // expr-stmt -> expr? ";"
-    private ASTNode parseExprStmt() throws ParseException {
-        ASTNode exprStmtNode = new ASTNode("ExprStmt", null);
+    private int parseExprStmt() {
+        int exprStmtNode = tree.node(NodeKind.EXPR_STMT, null);
         if (currentToken.getType() != LexicalScanner.Type.Separator) {
-            exprStmtNode.addChild(parseExpr());
+            tree.addChild(exprStmtNode, parseExpr());
         }
-        exprStmtNode.addChild(new ASTNode(";", null));
+        tree.addChild(exprStmtNode, SyntaxTree.marker(NodeKind.SEMICOLON));
         expect(LexicalScanner.Type.Separator);
         return exprStmtNode;
     }
 
     // expr -> assignment-expr
-    private ASTNode parseExpr() throws ParseException {
-        return parseAssignExpr();
+    private int parseExpr() {
+        return parseExpr(Operator.LOWEST);
     }
 
-    // assignment-expr -> cond-or-expr ( "=" cond-or-expr )*
-    private ASTNode parseAssignExpr() throws ParseException {
-        ASTNode AssignExprNode = parseOrExpr();
-        while (currentToken.value.equals("=")) {
-            AssignExprNode.addChild(new ASTNode("AssignExpr", currentToken.value));
+    // binary operators binding at least minPower, precedences are listed in Operator
+    // every operand hangs off the leftmost one: a * b + c is (a (*) b (+) c) and a + b * c is (a (+) (b (*) c))
+    private int parseExpr(int minPower) {
+        int exprNode = parseUnaryExpr();
+        Operator operator = currentToken.getOperator();
+        while (operator != null && operator.getBindingPower() >= minPower) {
+            tree.addChild(exprNode, tree.node(operator.getKind(), operator.getText()));
             advance();
-            AssignExprNode.addChild(parseOrExpr());
+            // the right operand binds tighter, so equal powers associate to the left
+            tree.addChild(exprNode, parseExpr(operator.getBindingPower() + 1));
+            operator = currentToken.getOperator();
         }
-        return AssignExprNode;
+        return exprNode;
     }
 
-    // cond-or-expr -> cond-and-expr ( "||" cond-and-expr )?
-    private ASTNode parseOrExpr() throws ParseException {
-        ASTNode OrExprNode = parseAndExpr();
-        while (currentToken.value.equals("||")) {
-            OrExprNode.addChild(new ASTNode("OrExpr", currentToken.value));
-            advance();
-            OrExprNode.addChild(parseAndExpr());
-        }
-        return OrExprNode;
-    }
-
-    // cond-and-expr -> equality-expr ( "&&" equality-expr )?
-    private ASTNode parseAndExpr() throws ParseException {
-        ASTNode AndExprNode = parseEqualityExpr();
-        while (currentToken.value.equals("&&")) {
-            AndExprNode.addChild(new ASTNode("AndExpr", currentToken.value));
-            advance();
-            AndExprNode.addChild(parseEqualityExpr());
-        }
-        return AndExprNode;
-    }
-
-    // equality-expr -> rel-expr ( "==" rel-expr )?
-    //                | rel-expr ( "!=" rel-expr )?
-    private ASTNode parseEqualityExpr() throws ParseException {
-        ASTNode EqualityExprNode = parseRelExpr();
-        while (currentToken.value.equals("==") || currentToken.value.equals("!=")) {
-            EqualityExprNode.addChild(new ASTNode("EqualityExpr", currentToken.value));
-            advance();
-            EqualityExprNode.addChild(parseRelExpr());
-        }
-        return EqualityExprNode;
-    }
-
-    //rel-expr -> additive-expr ( "<" additive-expr )?
-    //         | additive-expr ( "<=" additive-expr )?
-    //         | additive-expr ( ">" additive-expr )?
-    //         | additive-expr ( ">=" additive-expr )?
-    private ASTNode parseRelExpr() throws ParseException {
-        ASTNode RelExprNode = parseAddExpr();
-        while (currentToken.value.equals("<") || currentToken.value.equals("<=")
-                || currentToken.value.equals(">") || currentToken.value.equals(">=")) {
-            RelExprNode.addChild(new ASTNode("RelExpr", currentToken.value));
-            advance();
-            RelExprNode.addChild(parseAddExpr());
-        }
-        return RelExprNode;
-    }
-
-    //additive-expr -> multiplicative-expr ( "+" multiplicative-expr )?
-    //               | multiplicative-expr ( "-" multiplicative-expr )?
-    private ASTNode parseAddExpr() throws ParseException {
-        ASTNode AddExprNode = parseMulExpr();
-        while (currentToken.value.equals("+") || currentToken.value.equals("-")) {
-            AddExprNode.addChild(new ASTNode("AddExpr", currentToken.value));
-            advance();
-            AddExprNode.addChild(parseMulExpr());
-        }
-        return AddExprNode;
-    }
-
-    //multiplicative-expr -> unary-expr ( "*" unary-expr )?
-    //                     | unary-expr ( "/" unary-expr )?
-    private ASTNode parseMulExpr() throws ParseException {
-        ASTNode MulExprNode = parseUnaryExpr();
-        while (currentToken.value.equals("*") || currentToken.value.equals("/")) {
-            MulExprNode.addChild(new ASTNode("MulExpr", currentToken.value));
-            advance();
-            MulExprNode.addChild(parseUnaryExpr());
-        }
-        return MulExprNode;
-    }
-
-    // unary-expr -> "+" unary-expr
-    //             | "-" unary-expr
+    // unary-expr -> "++" unary-expr
+    //             | "--" unary-expr
     //             | "!" unary-expr
     //             | primary-expr
-    private ASTNode parseUnaryExpr() throws ParseException {
-        if (currentToken.value.equals("++") || currentToken.value.equals("--")
-                || currentToken.value.equals("!")) {
-            ASTNode UnaryExprNode = new ASTNode("UnaryExpr", currentToken.value);
+    private int parseUnaryExpr() {
+        Operator operator = currentToken.getOperator();
+        if (operator != null && operator.isPrefix()) {
+            int UnaryExprNode = tree.node(NodeKind.UNARY_EXPR, operator.getText());
             advance();
-            UnaryExprNode.addChild(parseUnaryExpr());
+            tree.addChild(UnaryExprNode, parseUnaryExpr());
             return UnaryExprNode;
         } else {
             return parsePrimaryExpr();
@@ -462,62 +489,65 @@ public class Parser {
     //               | FLOATLITERAL
     //               | BOOLLITERAL
     //               | STRINGLITERAL
-    private ASTNode parsePrimaryExpr() throws ParseException {
-        ASTNode PrimaryExprNode = null;
+    private int parsePrimaryExpr() {
+        int PrimaryExprNode;
         if (currentToken.type.equals(LexicalScanner.Type.Identifier)) {
-            PrimaryExprNode = new ASTNode("Identifier", currentToken.value);
+            PrimaryExprNode = tree.node(NodeKind.IDENTIFIER, currentToken.value, currentToken.symbol);
             advance();
-            if (lexer.peekToken().value.equals("(") || lexer.peekToken().value.equals("[")) {
+            if (tokens.peek(0).value.equals("(") || tokens.peek(0).value.equals("[")) {
                 if (currentToken.value.equals("(")) {
-                    PrimaryExprNode.addChild(parseArgList());
+                    tree.addChild(PrimaryExprNode, parseArgList());
                     advance();
                 } else if (currentToken.value.equals("[")) {
-                    PrimaryExprNode.addChild(parseExpr());
+                    tree.addChild(PrimaryExprNode, parseExpr());
                     expect(LexicalScanner.Type.Separator); // ]
                 }
             }
         } else if (currentToken.type == LexicalScanner.Type.IntLiteral ||
                 currentToken.type == LexicalScanner.Type.RealLiteral ||
                 currentToken.type == LexicalScanner.Type.StrLiteral) {
-            PrimaryExprNode = new ASTNode(currentToken.type.toString(), currentToken.value);
+            PrimaryExprNode = tree.node(NodeKind.ofLiteral(currentToken.type), currentToken.value);
             advance();
         } else if (currentToken.value.equals("(")) {
+            // the parentheses only group, the tree shows the expression inside
             advance();
-            PrimaryExprNode.addChild(parseExpr());
-            PrimaryExprNode.addChild(new ASTNode(")", null));
+            PrimaryExprNode = parseExpr();
             expect(LexicalScanner.Type.Separator);
+        } else {
+            error("Expected expression but found " + currentToken.type);
+            PrimaryExprNode = tree.node(NodeKind.ERROR, null);
         }
         return PrimaryExprNode;
     }
 
     // para-list -> "(" proper-para-list? ")"
-    private ASTNode parseArgList() throws ParseException {
-        ASTNode argListNode = new ASTNode("ArgList", null);
-        argListNode.addChild(new ASTNode("(", null));
+    private int parseArgList() {
+        int argListNode = tree.node(NodeKind.ARG_LIST, null);
+        tree.addChild(argListNode, SyntaxTree.marker(NodeKind.LEFT_PAREN));
         expect(LexicalScanner.Type.Separator);
         if (!currentToken.value.equals(")")) {
-            argListNode.addChild(parseProperArgList());
+            tree.addChild(argListNode, parseProperArgList());
             advance();
         }
-        argListNode.addChild(new ASTNode(")", null));
+        tree.addChild(argListNode, SyntaxTree.marker(NodeKind.RIGHT_PAREN));
         expect(LexicalScanner.Type.Separator);
         return argListNode;
     }
 
     // proper-arg-list -> arg ( "," arg )*
-    private ASTNode parseProperArgList() throws ParseException {
-        ASTNode properArgListNode = new ASTNode("ProperArgList", null);
-        properArgListNode.addChild(parseArg());
-        while (lexer.peek2Token().value.equals(",")) {
+    private int parseProperArgList() {
+        int properArgListNode = tree.node(NodeKind.PROPER_ARG_LIST, null);
+        tree.addChild(properArgListNode, parseArg());
+        while (tokens.peek(1).value.equals(",")) {
             advance();
-            properArgListNode.addChild(parseArg());
+            tree.addChild(properArgListNode, parseArg());
             advance();
         }
         return properArgListNode;
     }
 
     // arg -> expr
-    private ASTNode parseArg() throws ParseException {
+    private int parseArg() {
         return parseExpr();
     }
 }
\ No newline at end of file
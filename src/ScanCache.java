@@ -0,0 +1,289 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// scan and parse results on disk, keyed by a hash of the source bytes, least recently used entries evicted first
+//
+// an entry <key> is <key>.vctb (TokenFile), <key>.vcab (AstFile) and, for sources with syntax errors,
+// <key>.vcer (the Diagnostics), each written to a temporary file and renamed into place,
+// the token file last so it marks a complete entry
+public final class ScanCache {
+    // bump whenever Automaton, Controller or Parser change the tokens, trees or diagnostics they produce
+    public static final int VERSION = 4;
+
+    private static final String TOKENS = ".vctb";
+    private static final String TREE = ".vcab";
+    private static final String ERROR = ".vcer";
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long seed;
+    // key -> entry bytes on disk, in access order
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ScanCache(Path directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, KeywordTable.DEFAULT);
+    }
+
+    // the keyword table is part of the key, results for another dialect are never returned
+    public ScanCache(Path directory, long maxBytes, KeywordTable keywords) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.seed = mix(((long) VERSION << 48 | (long) TokenFile.VERSION << 40 | (long) AstFile.VERSION << 32)
+                ^ (keywords.mask() & 0xFFFFFFFFL));
+        Files.createDirectories(directory);
+        load();
+    }
+
+    // hash of the file's bytes and length, the name of its entry
+    public String key(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to scan: " + file + " (" + size + " bytes)");
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return String.format("%016x-%x", hash(bytes, seed), size);
+        }
+    }
+
+    // null on a miss, or when another process evicted the entry while it was being opened
+    public Entry get(String key) throws IOException {
+        Path tokens = directory.resolve(key + TOKENS);
+        try {
+            TokenFile tokenFile = TokenFile.open(tokens);
+            // read in the order delete() removes them, an entry evicted meanwhile fails at the tree
+            Path errors = directory.resolve(key + ERROR);
+            Diagnostics diagnostics = Files.exists(errors) ? readDiagnostics(errors) : new Diagnostics();
+            Path tree = directory.resolve(key + TREE);
+            Entry entry = new Entry(tokenFile, AstFile.open(tree), diagnostics, tokens, tree);
+            Files.setLastModifiedTime(tokens, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (index) {
+                index.get(key);
+            }
+            hits.incrementAndGet();
+            return entry;
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    // stores the tokens, the tree and its syntax errors, evicting old entries to make room
+    public void put(String key, TokenBuffer tokens, int flags, SyntaxTree tree, Diagnostics diagnostics)
+            throws IOException {
+        Path tokenPath = directory.resolve(key + TOKENS);
+        long size = 0;
+        if (!diagnostics.isEmpty()) {
+            size += install(directory.resolve(key + ERROR), temp -> writeDiagnostics(diagnostics, temp));
+        }
+        size += install(directory.resolve(key + TREE), temp -> AstFile.write(tree, temp));
+        size += install(tokenPath, temp -> TokenFile.write(tokens, flags, temp));
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (index) {
+            Long previous = index.put(key, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+            while (totalBytes > maxBytes && index.size() > 1) {
+                Map.Entry<String, Long> victim = eldest.next();
+                totalBytes -= victim.getValue();
+                evicted.add(victim.getKey());
+                eldest.remove();
+            }
+        }
+        for (String victim : evicted) {
+            delete(victim);
+            evictions.incrementAndGet();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getSize() {
+        synchronized (index) {
+            return totalBytes;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    // fills the index from the entries already on disk, oldest token file first
+    private void load() throws IOException {
+        Map<Path, FileTime> entries = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TOKENS)) {
+            for (Path path : stream) {
+                entries.put(path, Files.getLastModifiedTime(path));
+            }
+        }
+        List<Path> oldestFirst = new ArrayList<>(entries.keySet());
+        oldestFirst.sort((a, b) -> entries.get(a).compareTo(entries.get(b)));
+        for (Path path : oldestFirst) {
+            String name = path.getFileName().toString();
+            String key = name.substring(0, name.length() - TOKENS.length());
+            long size = sizeOf(path) + sizeOf(directory.resolve(key + TREE)) + sizeOf(directory.resolve(key + ERROR));
+            index.put(key, size);
+            totalBytes += size;
+        }
+    }
+
+    // the token file goes first so a reader never finds it without the rest of the entry
+    private void delete(String key) {
+        for (String extension : new String[] {TOKENS, TREE, ERROR}) {
+            try {
+                Files.deleteIfExists(directory.resolve(key + extension));
+            } catch (IOException e) {
+                // still mapped or locked elsewhere, picked up again on the next load
+            }
+        }
+    }
+
+    private long install(Path target, FileContents contents) throws IOException {
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            contents.write(temp);
+            long size = Files.size(temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // int count, then int token, int offset and the message in modified UTF-8 for each error
+    private static void writeDiagnostics(Diagnostics diagnostics, Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(diagnostics.size());
+            for (Diagnostic diagnostic : diagnostics) {
+                out.writeInt(diagnostic.getToken());
+                out.writeInt(diagnostic.getOffset());
+                out.writeUTF(diagnostic.getMessage());
+            }
+        }
+    }
+
+    private static Diagnostics readDiagnostics(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            Diagnostics diagnostics = new Diagnostics();
+            for (int count = in.readInt(); count > 0; count--) {
+                int token = in.readInt();
+                int offset = in.readInt();
+                diagnostics.report(in.readUTF(), token, offset);
+            }
+            return diagnostics;
+        }
+    }
+
+    private static long sizeOf(Path path) throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    // 64-bit hash taking eight bytes per step, in the style of xxHash
+    static long hash(ByteBuffer bytes, long seed) {
+        ByteBuffer in = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int limit = in.limit();
+        int i = in.position();
+        long h = seed + PRIME_5 + (limit - i);
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long k = Long.rotateLeft(in.getLong(i) * PRIME_2, 31) * PRIME_1;
+            h = Long.rotateLeft(h ^ k, 27) * PRIME_1 + PRIME_4;
+        }
+        for (; i < limit; i++) {
+            h = Long.rotateLeft(h ^ (in.get(i) & 0xFF) * PRIME_5, 11) * PRIME_1;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= PRIME_2;
+        h ^= h >>> 29;
+        h *= PRIME_3;
+        return h ^ h >>> 32;
+    }
+
+    private interface FileContents {
+        void write(Path path) throws IOException;
+    }
+
+    // a cached result, the tokens and tree are read from their mapped files
+    public static final class Entry {
+        private final TokenFile tokens;
+        private final AstFile tree;
+        private final Diagnostics diagnostics;
+        private final Path tokenPath;
+        private final Path treePath;
+
+        Entry(TokenFile tokens, AstFile tree, Diagnostics diagnostics, Path tokenPath, Path treePath) {
+            this.tokens = tokens;
+            this.tree = tree;
+            this.diagnostics = diagnostics;
+            this.tokenPath = tokenPath;
+            this.treePath = treePath;
+        }
+
+        public TokenFile getTokens() {
+            return tokens;
+        }
+
+        public AstFile getTree() {
+            return tree;
+        }
+
+        // empty if the source parsed without errors
+        public Diagnostics getDiagnostics() {
+            return diagnostics;
+        }
+
+        public Path getTokenPath() {
+            return tokenPath;
+        }
+
+        public Path getTreePath() {
+            return treePath;
+        }
+    }
+}
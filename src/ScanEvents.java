@@ -0,0 +1,215 @@
+import java.nio.file.Path;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight Recorder events for the scan/parse pipeline, vc.jfc records them next to GC and allocation events
+//
+// jdk.jfr comes with JDK 11 and later and with 8u262 and later, on other JVMs ENABLED is false and no event class
+// is ever loaded. the factories return null unless a recording wants the event, so with recording off a phase
+// costs a flag check
+final class ScanEvents {
+    static final boolean ENABLED = available();
+
+    private ScanEvents() {
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ScanEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    // started events, null if nothing is recording them
+    static FileScan fileScan() {
+        if (!ENABLED) {
+            return null;
+        }
+        FileScan event = new FileScan();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static Parse parse() {
+        if (!ENABLED) {
+            return null;
+        }
+        Parse event = new Parse();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static DeclarationParse declarationParse() {
+        if (!ENABLED) {
+            return null;
+        }
+        DeclarationParse event = new DeclarationParse();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static Output output() {
+        if (!ENABLED) {
+            return null;
+        }
+        Output event = new Output();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Name("vc.FileScan")
+    @Label("File Scan")
+    @Category({"VC", "Scanner"})
+    @Description("Controller scanning one source file into tokens")
+    static final class FileScan extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Invalid Tokens")
+        long invalidTokens;
+
+        void finish(String file, long bytes, TokenBuffer result) {
+            end();
+            if (shouldCommit()) {
+                long[] counts = new long[LexicalScanner.Type.values().length];
+                result.countTypes(counts);
+                this.file = file;
+                this.bytes = bytes;
+                this.tokens = result.size();
+                this.invalidTokens = counts[LexicalScanner.Type.Invalid.ordinal()];
+                commit();
+            }
+        }
+    }
+
+    @Name("vc.Parse")
+    @Label("Parse")
+    @Category({"VC", "Parser"})
+    @Description("Parser building the tree of one source file")
+    static final class Parse extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Syntax Errors")
+        int errors;
+
+        void finish(String file, long bytes, int tokens, PackedTree tree, Diagnostics diagnostics) {
+            end();
+            if (shouldCommit()) {
+                this.file = file;
+                this.bytes = bytes;
+                this.tokens = tokens;
+                this.nodes = tree.size();
+                this.errors = diagnostics.size();
+                commit();
+            }
+        }
+    }
+
+    @Name("vc.DeclarationParse")
+    @Label("Declaration Parse")
+    @Category({"VC", "Parser"})
+    @Description("Parser reading one top-level function or variable declaration")
+    static final class DeclarationParse extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Declaration")
+        @Description("Position among the top-level declarations, from 0")
+        int index;
+
+        @Label("First Token")
+        int firstToken;
+
+        @Label("Length")
+        @Description("Chars from the start of the first token to the end of the last, -1 if the offsets are unknown")
+        long chars;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Nodes")
+        long nodes;
+
+        void finish(String file, int index, Token first, int firstToken, Token last, int endToken, int nodes) {
+            end();
+            if (shouldCommit()) {
+                this.file = file;
+                this.index = index;
+                this.firstToken = firstToken;
+                this.chars = first.getStart() < 0 || last.getStart() < 0
+                        ? -1 : last.getStart() + last.getValue().length() - first.getStart();
+                this.tokens = endToken - firstToken;
+                this.nodes = nodes;
+                commit();
+            }
+        }
+    }
+
+    @Name("vc.Output")
+    @Label("Output")
+    @Category({"VC", "Output"})
+    @Description("Writing the tokens (.vctok) or the tree (.vcps) of one source file")
+    static final class Output extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Format")
+        String format;
+
+        @Label("Size")
+        @Description("Bytes written")
+        @DataAmount
+        long bytes;
+
+        @Label("Count")
+        @Description("Tokens or nodes written")
+        long count;
+
+        void finish(Path file, String format, long count) {
+            end();
+            if (shouldCommit()) {
+                this.file = file.toString();
+                this.format = format;
+                this.bytes = file.toFile().length();
+                this.count = count;
+                commit();
+            }
+        }
+    }
+}
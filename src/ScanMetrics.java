@@ -0,0 +1,334 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// where the scan/parse pipeline spends its time: bytes read, tokens by kind, time per phase, AST nodes and
+// bytes allocated, for each run and summed up
+//
+// a Run is filled in by the thread doing the work and added in one go when it ends, the sums are LongAdders
+// so workers finishing at the same time do not contend on them
+public final class ScanMetrics implements ScanMetricsMXBean {
+    public static final String OBJECT_NAME = "vc:type=ScanMetrics";
+
+    private static final LexicalScanner.Type[] TYPES = LexicalScanner.Type.values();
+    private static final int INVALID = LexicalScanner.Type.Invalid.ordinal();
+    // null where the JVM cannot count the bytes a thread allocates
+    private static final com.sun.management.ThreadMXBean ALLOCATION = allocationCounter();
+    // every run since start-up, this is what JMX shows
+    public static final ScanMetrics GLOBAL = new ScanMetrics(null);
+
+    private final ScanMetrics parent;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder[] tokens = new LongAdder[TYPES.length];
+    private final LongAdder scanNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder serializeNanos = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+
+    // sums of their own, for one batch say, every run added here is added to GLOBAL as well
+    public ScanMetrics() {
+        this(GLOBAL);
+    }
+
+    private ScanMetrics(ScanMetrics parent) {
+        this.parent = parent;
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = new LongAdder();
+        }
+    }
+
+    // registers GLOBAL with the platform MBean server, once
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered before
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    // starts timing one input of the given size, the clock runs from here to the first phase
+    public Run start(long bytes) {
+        return new Run(this, bytes);
+    }
+
+    // the sums so far, as one Run
+    public Run snapshot() {
+        Run sum = new Run(null, bytes.sum());
+        sum.runs = runs.sum();
+        for (int i = 0; i < tokens.length; i++) {
+            sum.tokens[i] = tokens[i].sum();
+        }
+        sum.scanNanos = scanNanos.sum();
+        sum.parseNanos = parseNanos.sum();
+        sum.serializeNanos = serializeNanos.sum();
+        sum.nodes = nodes.sum();
+        sum.allocated = allocated.sum();
+        return sum;
+    }
+
+    // prints what happened since the line before every period, until the returned future is cancelled
+    public ScheduledFuture<?> logEvery(long period, TimeUnit unit, PrintStream out) {
+        Run[] last = {snapshot()};
+        return Logger.SCHEDULER.scheduleAtFixedRate(() -> {
+            Run now = snapshot();
+            out.println("metrics: " + now.since(last[0]));
+            last[0] = now;
+        }, period, period, unit);
+    }
+
+    private void add(Run run) {
+        runs.add(run.runs);
+        bytes.add(run.bytes);
+        for (int i = 0; i < tokens.length; i++) {
+            if (run.tokens[i] != 0) {
+                tokens[i].add(run.tokens[i]);
+            }
+        }
+        scanNanos.add(run.scanNanos);
+        parseNanos.add(run.parseNanos);
+        serializeNanos.add(run.serializeNanos);
+        nodes.add(run.nodes);
+        allocated.add(run.allocated);
+        if (parent != null) {
+            parent.add(run);
+        }
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getTokens() {
+        long sum = 0;
+        for (LongAdder count : tokens) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    public long getTokens(LexicalScanner.Type type) {
+        return tokens[type.ordinal()].sum();
+    }
+
+    @Override
+    public long getInvalidTokens() {
+        return tokens[INVALID].sum();
+    }
+
+    @Override
+    public Map<String, Long> getTokensByType() {
+        Map<String, Long> byType = new LinkedHashMap<>();
+        for (LexicalScanner.Type type : TYPES) {
+            byType.put(type.name(), tokens[type.ordinal()].sum());
+        }
+        return byType;
+    }
+
+    @Override
+    public long getScanNanos() {
+        return scanNanos.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    @Override
+    public long getSerializeNanos() {
+        return serializeNanos.sum();
+    }
+
+    @Override
+    public long getAstNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return ALLOCATION == null ? -1 : allocated.sum();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    static long allocatedByThisThread() {
+        return ALLOCATION == null ? 0 : ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // one input going through the pipeline, used by one thread
+    // each phase method books the time since the previous call, so the phases have to be reported in order
+    public static final class Run {
+        private final ScanMetrics metrics;
+        private final long[] tokens = new long[TYPES.length];
+        private final long allocationMark;
+        private long runs = 1;
+        private long bytes;
+        private long scanNanos;
+        private long parseNanos;
+        private long serializeNanos;
+        private long nodes;
+        private long allocated;
+        // allocated on another thread for this run, see scanned(TokenBuffer, long, long)
+        private long allocatedElsewhere;
+        private long mark;
+
+        private Run(ScanMetrics metrics, long bytes) {
+            this.metrics = metrics;
+            this.bytes = bytes;
+            this.allocationMark = metrics == null ? 0 : allocatedByThisThread();
+            this.mark = System.nanoTime();
+        }
+
+        public void scanned(TokenBuffer result) {
+            result.countTypes(tokens);
+            scanNanos += lap();
+        }
+
+        // scanned on another thread, with the time and allocation measured there, the clock of this run is
+        // not moved so the phase before and after are timed as usual
+        public void scanned(TokenBuffer result, long nanos, long allocatedBytes) {
+            result.countTypes(tokens);
+            scanNanos += nanos;
+            allocatedElsewhere += allocatedBytes;
+        }
+
+        public void parsed(PackedTree tree) {
+            nodes += tree.size();
+            parseNanos += lap();
+        }
+
+        // output written since the previous phase
+        public void serialized() {
+            serializeNanos += lap();
+        }
+
+        // tokens and tree taken from ScanCache, counted but not timed as scanning or parsing
+        public void loaded(TokenFile result, PackedTree tree) {
+            for (int i = 0; i < result.size(); i++) {
+                tokens[result.getType(i).ordinal()]++;
+            }
+            nodes += tree.size();
+            lap();
+        }
+
+        // adds the run to its ScanMetrics, call it once on the thread that did the work
+        public void end() {
+            if (metrics == null) {
+                throw new IllegalStateException("Not a running measurement");
+            }
+            allocated = allocatedByThisThread() - allocationMark + allocatedElsewhere;
+            metrics.add(this);
+        }
+
+        private long lap() {
+            long now = System.nanoTime();
+            long elapsed = now - mark;
+            mark = now;
+            return elapsed;
+        }
+
+        // the difference to an earlier snapshot
+        public Run since(Run earlier) {
+            Run difference = new Run(null, bytes - earlier.bytes);
+            difference.runs = runs - earlier.runs;
+            for (int i = 0; i < tokens.length; i++) {
+                difference.tokens[i] = tokens[i] - earlier.tokens[i];
+            }
+            difference.scanNanos = scanNanos - earlier.scanNanos;
+            difference.parseNanos = parseNanos - earlier.parseNanos;
+            difference.serializeNanos = serializeNanos - earlier.serializeNanos;
+            difference.nodes = nodes - earlier.nodes;
+            difference.allocated = allocated - earlier.allocated;
+            return difference;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getTokens() {
+            long sum = 0;
+            for (long count : tokens) {
+                sum += count;
+            }
+            return sum;
+        }
+
+        public long getTokens(LexicalScanner.Type type) {
+            return tokens[type.ordinal()];
+        }
+
+        public long getScanNanos() {
+            return scanNanos;
+        }
+
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        public long getSerializeNanos() {
+            return serializeNanos;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        // 0 where the JVM does not count allocation per thread
+        public long getAllocatedBytes() {
+            return allocated;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d runs, %d bytes, %d tokens (%d invalid), %d nodes,"
+                            + " scan %.1f ms, parse %.1f ms, write %.1f ms, %s allocated",
+                    runs, bytes, getTokens(), tokens[INVALID], nodes,
+                    scanNanos / 1e6, parseNanos / 1e6, serializeNanos / 1e6,
+                    ALLOCATION == null ? "unknown bytes" : allocated + " bytes");
+        }
+    }
+
+    // one daemon thread for all periodic log lines
+    private static final class Logger {
+        static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "scan-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
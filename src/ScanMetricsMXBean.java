@@ -0,0 +1,26 @@
+import java.util.Map;
+
+// ScanMetrics as seen over JMX, registered as vc:type=ScanMetrics
+public interface ScanMetricsMXBean {
+    long getRuns();
+
+    long getBytesRead();
+
+    long getTokens();
+
+    long getInvalidTokens();
+
+    // token count by LexicalScanner.Type name
+    Map<String, Long> getTokensByType();
+
+    long getScanNanos();
+
+    long getParseNanos();
+
+    long getSerializeNanos();
+
+    long getAstNodes();
+
+    // -1 if the JVM does not measure allocation per thread
+    long getAllocatedBytes();
+}
@@ -0,0 +1,314 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// long-running scanner: requests come in as frames on stdin and the answers go out as frames on stdout,
+// so the JVM starts and the JIT warms up once instead of on every run
+//
+// frames are big endian, each starts with an int byte count of the rest
+//   request:  int length, int id, byte command (SCAN or PARSE), byte format (TEXT or BINARY),
+//             short name length, name (UTF-8, may be empty), source (UTF-8) up to the end of the frame
+//   response: int length, int id, byte status (OK or ERROR), int payload length, payload,
+//             diagnostics up to the end of the frame (UTF-8, one "line:column: message" per line)
+// a TEXT payload is the .vctok or .vcps text, a BINARY one the TokenFile or AstFile bytes, an ERROR payload
+// is the message. responses are written as requests finish, not in request order
+// the server stops once stdin is closed and every request has been answered
+public final class ScanServer {
+    public static final byte SCAN = 'S';
+    public static final byte PARSE = 'P';
+    public static final byte TEXT = 'T';
+    public static final byte BINARY = 'B';
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+
+    private static final int MAX_FRAME = 256 << 20;
+    private static final int DEFAULT_WARMUP = 10000;
+    private static final String WARMUP_SOURCE = "int count = 0;\n"
+            + "float scale(float x, int n) {\n"
+            + "    // comment\n"
+            + "    for (int i = 0; i < n; i++) { x = x * 1.5E2 + i / 2; }\n"
+            + "    if (x >= 10.0 && !(n == 3) || x != 2) { return x - 1; } else { count++; }\n"
+            + "    while (n > 0) { n = n - 1; /* block */ }\n"
+            + "    return \"done\";\n"
+            + "}\n";
+
+    private final ExecutorService workers;
+    private final DataOutputStream out;
+    private final ScanMetrics metrics = new ScanMetrics();
+
+    public ScanServer(OutputStream out, int threads) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.workers = newExecutor(threads);
+    }
+
+    // usage: ScanServer [-j threads] [-w warmup-iterations]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int warmup = DEFAULT_WARMUP;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-w") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Usage: ScanServer [-j threads] [-w warmup-iterations]");
+                return;
+            }
+        }
+        // stdout carries the frames, anything printed goes to stderr instead
+        OutputStream frames = new FileOutputStream(FileDescriptor.out);
+        System.setOut(System.err);
+        ScanMetrics.register();
+        ScanServer server = new ScanServer(frames, threads);
+        server.warmUp(warmup);
+        server.serve(System.in);
+    }
+
+    // scanning and parsing are CPU bound, so requests share -j threads rather than a thread each
+    private static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "scan-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // runs every command and format until the scanner and parser are compiled, the results are dropped
+    public void warmUp(int iterations) {
+        byte[] source = WARMUP_SOURCE.getBytes(StandardCharsets.UTF_8);
+        byte[][] kinds = {{SCAN, TEXT}, {SCAN, BINARY}, {PARSE, TEXT}, {PARSE, BINARY}};
+        for (int i = 0; i < iterations; i++) {
+            byte[] kind = kinds[i & 3];
+            try {
+                // named so its events can be told apart in a recording
+                respond(i, kind[0], kind[1], "(warm-up)", source, null);
+            } catch (IOException e) {
+                throw new IllegalStateException("Warm-up failed", e);
+            }
+        }
+    }
+
+    // reads requests until the stream ends, each is answered on a worker
+    public void serve(InputStream requests) throws IOException, InterruptedException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(requests));
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 8 || length > MAX_FRAME) {
+                    throw new IOException("Bad request frame length " + length);
+                }
+                int id = in.readInt();
+                byte command = in.readByte();
+                byte format = in.readByte();
+                int nameLength = in.readUnsignedShort();
+                if (nameLength > length - 8) {
+                    throw new IOException("Bad request frame: name of " + nameLength + " bytes in " + length);
+                }
+                byte[] name = new byte[nameLength];
+                in.readFully(name);
+                byte[] source = new byte[length - 8 - nameLength];
+                in.readFully(source);
+                String sourceName = new String(name, StandardCharsets.UTF_8);
+                workers.execute(() -> answer(id, command, format, sourceName, source));
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+
+    private void answer(int id, byte command, byte format, String name, byte[] source) {
+        try {
+            respond(id, command, format, name, source, out);
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            byte[] message = String.valueOf(e).getBytes(StandardCharsets.UTF_8);
+            try {
+                writeFrame(out, id, ERROR, message, 0, message.length, new byte[0]);
+            } catch (IOException closed) {
+                // the client is gone, nothing left to tell it
+            }
+        }
+    }
+
+    // scans or parses one source and writes the response frame to target
+    // with a null target the response is only computed and the run is left out of the metrics
+    private void respond(int id, byte command, byte format, String name, byte[] source, DataOutputStream target)
+            throws IOException {
+        if (command != SCAN && command != PARSE) {
+            throw new IllegalArgumentException("Unknown command " + (char) command);
+        }
+        if (format != TEXT && format != BINARY) {
+            throw new IllegalArgumentException("Unknown format " + (char) format);
+        }
+        ScanMetrics.Run run = metrics.start(source.length);
+        // the request bytes are scanned as they are, only token values and diagnostics are decoded
+        CharSequence input = SourceFile.of(ByteBuffer.wrap(source));
+        ScanEvents.FileScan scanEvent = ScanEvents.fileScan();
+        // a missing quote is reported in the response instead of printed
+        Controller controller = new Controller(input).quiet();
+        TokenBuffer tokens = controller.scanTokens();
+        if (scanEvent != null) {
+            scanEvent.finish(name, source.length, tokens);
+        }
+        run.scanned(tokens);
+        Diagnostics diagnostics = new Diagnostics();
+        if (controller.hasMissingQuote()) {
+            diagnostics.report("Missing closing double quote", tokens.size(), -1);
+        }
+        int flags = controller.hasMissingQuote() ? TokenFile.MISSING_QUOTE : 0;
+
+        // text is collected as chars and encoded in one go, a Writer would encode each lexeme on its own
+        Payload payload = new Payload();
+        StringBuilder text = new StringBuilder();
+        if (command == SCAN) {
+            if (format == TEXT) {
+                for (int i = 0; i < tokens.size(); i++) {
+                    text.append(tokens.getType(i).toString()).append(' ').append(tokens.getLexeme(i)).append('\n');
+                }
+            } else {
+                TokenFile.write(tokens, flags, Channels.newChannel(payload));
+            }
+        } else {
+            ScanEvents.Parse parseEvent = ScanEvents.parse();
+            Parser parser = new Parser(controller.getTokenStream(), diagnostics, name);
+            SyntaxTree tree = parser.parseTree();
+            if (parseEvent != null) {
+                parseEvent.finish(name, source.length, tokens.size(), tree, diagnostics);
+            }
+            run.parsed(tree);
+            if (format == TEXT) {
+                new AstWriter(text).write(tree);
+            } else {
+                AstFile.write(tree, Channels.newChannel(payload));
+            }
+        }
+        if (format == TEXT) {
+            payload.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder errors = new StringBuilder();
+        for (String line : diagnostics.format(input)) {
+            errors.append(line).append('\n');
+        }
+        if (target != null) {
+            writeFrame(target, id, OK, payload.buffer(), 0, payload.size(),
+                    errors.toString().getBytes(StandardCharsets.UTF_8));
+            run.serialized();
+            run.end();
+        }
+    }
+
+    private static void writeFrame(DataOutputStream target, int id, byte status, byte[] payload, int offset,
+                                   int length, byte[] diagnostics) throws IOException {
+        synchronized (target) {
+            target.writeInt(9 + length + diagnostics.length);
+            target.writeInt(id);
+            target.writeByte(status);
+            target.writeInt(length);
+            target.write(payload, offset, length);
+            target.write(diagnostics);
+            target.flush();
+        }
+    }
+
+    // client side of the protocol
+
+    public static void writeRequest(DataOutputStream out, int id, byte command, byte format, String name,
+                                    byte[] source) throws IOException {
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length > 0xFFFF) {
+            throw new IllegalArgumentException("Name longer than 65535 bytes: " + name);
+        }
+        out.writeInt(8 + utf8.length + source.length);
+        out.writeInt(id);
+        out.writeByte(command);
+        out.writeByte(format);
+        out.writeShort(utf8.length);
+        out.write(utf8);
+        out.write(source);
+    }
+
+    // null once the server has closed its output
+    public static Response readResponse(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 9 || length > MAX_FRAME) {
+            throw new IOException("Bad response frame length " + length);
+        }
+        int id = in.readInt();
+        byte status = in.readByte();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        byte[] diagnostics = new byte[length - 9 - payload.length];
+        in.readFully(diagnostics);
+        return new Response(id, status, payload, new String(diagnostics, StandardCharsets.UTF_8));
+    }
+
+    public static final class Response {
+        private final int id;
+        private final byte status;
+        private final byte[] payload;
+        private final String diagnostics;
+
+        Response(int id, byte status, byte[] payload, String diagnostics) {
+            this.id = id;
+            this.status = status;
+            this.payload = payload;
+            this.diagnostics = diagnostics;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public byte getStatus() {
+            return status;
+        }
+
+        // text, TokenFile or AstFile bytes, or the error message
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        // empty if there were no errors
+        public String getDiagnostics() {
+            return diagnostics;
+        }
+    }
+
+    // lets the frame be written straight from the collected bytes
+    private static final class Payload extends ByteArrayOutputStream {
+        Payload() {
+            super(4096);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// loads source files for the Controller without going through a String
+public final class SourceFile {
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private SourceFile() {
+    }
+
+    // files are read straight from the mapped bytes, see of(ByteBuffer)
+    public static CharSequence read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to scan: " + path + " (" + size + " bytes)");
+            }
+            // the mapping stays valid after the channel is closed
+            return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    // the chars of UTF-8 bytes from position to limit: pure ASCII is used as it is, other well-formed UTF-8 through
+    // a Utf8Sequence, and only malformed input is decoded, with the bad parts replaced
+    public static CharSequence of(ByteBuffer bytes) {
+        if (isAscii(bytes)) {
+            return new AsciiSequence(bytes, bytes.position(), bytes.remaining());
+        }
+        Utf8Sequence utf8 = Utf8Sequence.of(bytes);
+        return utf8 != null ? utf8 : decode(bytes);
+    }
+
+    // checks eight bytes at a time for a set high bit
+    public static boolean isAscii(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        int i = bytes.position();
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            if ((bytes.getLong(i) & HIGH_BITS) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the charset's own decode replaces malformed input
+    private static CharBuffer decode(ByteBuffer bytes) {
+        return StandardCharsets.UTF_8.decode(bytes.duplicate());
+    }
+
+    // chars of an ASCII byte buffer, each byte is one char, BulkSkip reads the bytes directly
+    // also the byte view a Controller scans a Utf8Sequence through, where bytes from 0x80 up become chars from 0xFF80
+    static final class AsciiSequence implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        AsciiSequence(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        ByteBuffer bytes() {
+            return bytes;
+        }
+
+        int offset() {
+            return offset;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            return (char) bytes.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            }
+            return new AsciiSequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[length];
+            ByteBuffer view = bytes.duplicate();
+            view.position(offset);
+            view.get(copy);
+            return new String(copy, StandardCharsets.US_ASCII);
+        }
+    }
+}
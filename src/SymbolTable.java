@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+// interned identifier names: each distinct name gets a dense id from 0 and a single String, looked up straight
+// from the source chars with open addressing, so a name seen before costs a hash and a compare and no substring
+//
+// one table can be shared by scanners on several threads, e.g. every file of a batch. lookups take no lock, a new
+// name is added under the table lock. slots are only ever filled in, and replaced tables are copies, so a reader
+// racing with an add either sees a slot complete enough to match or falls through to the locked path, which looks
+// again
+public final class SymbolTable {
+    private static final int INITIAL_SLOTS = 256;
+
+    private volatile Table table = new Table(INITIAL_SLOTS);
+    // written under the lock only
+    private int size;
+    private long nameBytes;
+
+    // id of the name spelled by source[start, end), added if it is new
+    public int intern(CharSequence source, int start, int end) {
+        int hash = hash(source, start, end);
+        Table current = table;
+        int mask = current.ids.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = current.ids[slot] - 1;
+            if (id < 0) {
+                return add(source, start, end, hash);
+            }
+            if (current.hashes[slot] == hash) {
+                String name = current.names[id];
+                if (name != null && matches(name, source, start, end)) {
+                    return id;
+                }
+            }
+        }
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    private synchronized int add(CharSequence source, int start, int end, int hash) {
+        Table current = table;
+        int mask = current.ids.length - 1;
+        int slot = hash & mask;
+        for (int id; (id = current.ids[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (current.hashes[slot] == hash && matches(current.names[id], source, start, end)) {
+                return id;
+            }
+        }
+        if (size == current.names.length) {
+            // at most half the slots are used, so a probe always ends at an empty one
+            current = current.grow();
+            table = current;
+            mask = current.ids.length - 1;
+            for (slot = hash & mask; current.ids[slot] != 0; slot = (slot + 1) & mask) {
+                // next free slot
+            }
+        }
+        int id = size++;
+        // the name goes in before the slot that leads to it
+        current.names[id] = source.subSequence(start, end).toString();
+        current.hashes[slot] = hash;
+        current.ids[slot] = id + 1;
+        nameBytes += stringBytes(end - start);
+        return id;
+    }
+
+    // the String of an id handed out by intern
+    public String name(int id) {
+        return table.names[id];
+    }
+
+    // number of distinct names
+    public synchronized int size() {
+        return size;
+    }
+
+    // estimated heap held by the table: the names, see stringBytes, and 12 bytes a slot for the arrays
+    public synchronized long getRetainedBytes() {
+        return nameBytes + 12L * table.ids.length;
+    }
+
+    // estimated heap of one String of length Latin-1 chars on a 64-bit JVM with compressed oops:
+    // a 24 byte String and a 16 byte array header plus the chars, rounded up to 8 bytes
+    public static long stringBytes(int length) {
+        return 24 + ((16 + length + 7) & ~7L);
+    }
+
+    // String.hashCode of the chars, spread like HashMap so the low bits used for slots vary
+    private static int hash(CharSequence source, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + source.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ids[slot] is id + 1, 0 for an empty slot, and hashes[slot] the hash of that name
+    private static final class Table {
+        final int[] hashes;
+        final int[] ids;
+        final String[] names;
+
+        Table(int slots) {
+            this.hashes = new int[slots];
+            this.ids = new int[slots];
+            this.names = new String[slots >>> 1];
+        }
+
+        private Table(int[] hashes, int[] ids, String[] names) {
+            this.hashes = hashes;
+            this.ids = ids;
+            this.names = names;
+        }
+
+        Table grow() {
+            int slots = ids.length * 2;
+            int mask = slots - 1;
+            int[] newHashes = new int[slots];
+            int[] newIds = new int[slots];
+            for (int slot = 0; slot < ids.length; slot++) {
+                if (ids[slot] != 0) {
+                    int target = hashes[slot] & mask;
+                    while (newIds[target] != 0) {
+                        target = (target + 1) & mask;
+                    }
+                    newHashes[target] = hashes[slot];
+                    newIds[target] = ids[slot];
+                }
+            }
+            return new Table(newHashes, newIds, Arrays.copyOf(names, slots >>> 1));
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// packed AST: node kinds, values and child index ranges in flat arrays
+// a node handle is an index into the arrays, a marker kind such as "(" is ~ordinal and takes no slot
+// and NONE stands for a missing node
+public final class SyntaxTree implements PackedTree {
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final ASTNode[] MARKERS = new ASTNode[KINDS.length];
+
+    static {
+        for (NodeKind kind : KINDS) {
+            if (kind.isMarker()) {
+                MARKERS[kind.ordinal()] = new View(null, marker(kind));
+            }
+        }
+    }
+
+    private final byte[] kinds;
+    private final String[] values;
+    // symbol id + 1 of Identifier and Declarator nodes, 0 for the rest
+    private final int[] symbols;
+    // children of node i are children[childStart[i]] up to children[childStart[i + 1]]
+    private final int[] childStart;
+    private final int[] children;
+    private final int root;
+
+    private SyntaxTree(byte[] kinds, String[] values, int[] symbols, int[] childStart, int[] children, int root) {
+        this.kinds = kinds;
+        this.values = values;
+        this.symbols = symbols;
+        this.childStart = childStart;
+        this.children = children;
+        this.root = root;
+    }
+
+    public static int marker(NodeKind kind) {
+        if (!kind.isMarker()) {
+            throw new IllegalArgumentException(kind + " is not a marker");
+        }
+        return ~kind.ordinal();
+    }
+
+    @Override
+    public int getRoot() {
+        return root;
+    }
+
+    @Override
+    public int size() {
+        return kinds.length;
+    }
+
+    @Override
+    public NodeKind getKind(int node) {
+        return node < 0 ? KINDS[~node] : KINDS[kinds[node]];
+    }
+
+    @Override
+    public String getValue(int node) {
+        return node < 0 ? null : values[node];
+    }
+
+    // id of the name in the scanner's SymbolTable, -1 if the node's value is not an interned identifier
+    public int getSymbol(int node) {
+        return node < 0 ? -1 : symbols[node] - 1;
+    }
+
+    @Override
+    public int getChildCount(int node) {
+        return node < 0 ? 0 : childStart[node + 1] - childStart[node];
+    }
+
+    @Override
+    public int getChild(int node, int index) {
+        if (index < 0 || index >= getChildCount(node)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getChildCount(node));
+        }
+        return children[childStart[node] + index];
+    }
+
+    // the tree as ASTNode objects, made on demand as it is walked
+    public ASTNode toASTNode() {
+        return view(root);
+    }
+
+    private ASTNode view(int node) {
+        if (node == NONE) {
+            return null;
+        }
+        return node < 0 ? MARKERS[~node] : new View(this, node);
+    }
+
+    @Override
+    public String toString() {
+        return AstWriter.toString(this, root);
+    }
+
+    // collects nodes in any order, children are linked while the parser appends them and packed by build()
+    public static final class Builder {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private byte[] kinds = new byte[INITIAL_CAPACITY];
+        private String[] values = new String[INITIAL_CAPACITY];
+        private int[] symbols = new int[INITIAL_CAPACITY];
+        // link numbers are index + 1 so that 0 ends a list
+        private int[] firstLink = new int[INITIAL_CAPACITY];
+        private int[] lastLink = new int[INITIAL_CAPACITY];
+        private int nodes;
+        private int[] linkChild = new int[INITIAL_CAPACITY];
+        private int[] linkNext = new int[INITIAL_CAPACITY];
+        private int links;
+        // names, operators and literals repeat, the tree keeps one copy of each value
+        private final Map<String, String> shared = new HashMap<>();
+
+        public int node(NodeKind kind, String value) {
+            return node(kind, value, -1);
+        }
+
+        // a name with a symbol id is already shared through the symbol table
+        public int node(NodeKind kind, String value, int symbol) {
+            if (kind.isMarker()) {
+                throw new IllegalArgumentException(kind + " is a marker");
+            }
+            if (nodes == kinds.length) {
+                int capacity = nodes * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                values = Arrays.copyOf(values, capacity);
+                symbols = Arrays.copyOf(symbols, capacity);
+                firstLink = Arrays.copyOf(firstLink, capacity);
+                lastLink = Arrays.copyOf(lastLink, capacity);
+            }
+            kinds[nodes] = (byte) kind.ordinal();
+            symbols[nodes] = symbol + 1;
+            if (symbol >= 0) {
+                values[nodes] = value;
+            } else if (value != null) {
+                String first = shared.putIfAbsent(value, value);
+                values[nodes] = first == null ? value : first;
+            }
+            return nodes++;
+        }
+
+        public void addChild(int parent, int child) {
+            if (parent == NONE) {
+                throw new NullPointerException("missing parent node");
+            }
+            if (parent < 0) {
+                throw new UnsupportedOperationException(KINDS[~parent] + " markers have no children");
+            }
+            if (links == linkChild.length) {
+                linkChild = Arrays.copyOf(linkChild, links * 2);
+                linkNext = Arrays.copyOf(linkNext, links * 2);
+            }
+            linkChild[links] = child;
+            linkNext[links] = 0;
+            links++;
+            if (lastLink[parent] == 0) {
+                firstLink[parent] = links;
+            } else {
+                linkNext[lastLink[parent] - 1] = links;
+            }
+            lastLink[parent] = links;
+        }
+
+        // nodes made so far
+        public int size() {
+            return nodes;
+        }
+
+        public SyntaxTree build(int root) {
+            int[] childStart = new int[nodes + 1];
+            int[] children = new int[links];
+            int count = 0;
+            for (int node = 0; node < nodes; node++) {
+                childStart[node] = count;
+                for (int link = firstLink[node]; link != 0; link = linkNext[link - 1]) {
+                    children[count++] = linkChild[link - 1];
+                }
+            }
+            childStart[nodes] = count;
+            return new SyntaxTree(Arrays.copyOf(kinds, nodes), Arrays.copyOf(values, nodes),
+                    Arrays.copyOf(symbols, nodes), childStart, children, root);
+        }
+    }
+
+    // read-only ASTNode over one node of a tree, markers share a single view each
+    private static final class View extends ASTNode {
+        private final SyntaxTree tree;
+        private final int node;
+
+        View(SyntaxTree tree, int node) {
+            this.tree = tree;
+            this.node = node;
+        }
+
+        @Override
+        public void addChild(ASTNode child) {
+            throw new UnsupportedOperationException("SyntaxTree nodes are read-only");
+        }
+
+        @Override
+        public String getType() {
+            return node < 0 ? KINDS[~node].getLabel() : tree.getKind(node).getLabel();
+        }
+
+        @Override
+        public String getValue() {
+            return node < 0 ? null : tree.getValue(node);
+        }
+
+        @Override
+        public List<ASTNode> getChildren() {
+            if (node < 0) {
+                return Collections.emptyList();
+            }
+            return new ChildList(tree, node);
+        }
+
+        @Override
+        public String toString() {
+            if (node < 0) {
+                return "(" + KINDS[~node].getLabel() + ")";
+            }
+            return AstWriter.toString(tree, node);
+        }
+    }
+
+    private static final class ChildList extends AbstractList<ASTNode> implements RandomAccess {
+        private final SyntaxTree tree;
+        private final int node;
+
+        ChildList(SyntaxTree tree, int node) {
+            this.tree = tree;
+            this.node = node;
+        }
+
+        @Override
+        public ASTNode get(int index) {
+            return tree.view(tree.getChild(node, index));
+        }
+
+        @Override
+        public int size() {
+            return tree.getChildCount(node);
+        }
+    }
+}
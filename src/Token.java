@@ -2,12 +2,27 @@ public class Token {
     State.STATE state;
     LexicalScanner.Type type;
     String value;
+    Keyword keyword;
+    Operator operator;
+    // first char in the source, -1 if not known
+    int start = -1;
+    // id in the scanner's SymbolTable for identifiers, -1 otherwise
+    int symbol = -1;
 
     public Token(LexicalScanner.Type type, String value) {
         this.type = type;
         this.value = value;
     }
 
+    public Token(LexicalScanner.Type type, String value, Keyword keyword, Operator operator, int start, int symbol) {
+        this.type = type;
+        this.value = value;
+        this.keyword = keyword;
+        this.operator = operator;
+        this.start = start;
+        this.symbol = symbol;
+    }
+
     public LexicalScanner.Type getType() {
         return type;
     }
@@ -23,4 +38,22 @@ public class Token {
     public void setValue(String value) {
         this.value = value;
     }
+
+    // null unless the token is a keyword
+    public Keyword getKeyword() {
+        return keyword;
+    }
+
+    // null unless the token is an operator of the expression grammar
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getSymbol() {
+        return symbol;
+    }
 }
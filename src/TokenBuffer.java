@@ -0,0 +1,218 @@
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+// packed token storage: kind, keyword or operator, start offset, length and symbol id in parallel arrays over the
+// source, identifier values come from the symbol table instead of being copied out of the source
+public class TokenBuffer {
+    private static final LexicalScanner.Type[] TYPES = LexicalScanner.Type.values();
+    private static final Keyword[] KEYWORDS = Keyword.values();
+    private static final Operator[] OPERATORS = Operator.values();
+    private static final byte KEYWORD_KIND = (byte) LexicalScanner.Type.Keyword.ordinal();
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final CharSequence source;
+    // may be null if no token has a symbol
+    private final SymbolTable symbolTable;
+    private byte[] kinds;
+    // keyword ordinal + 1 for keywords, operator ordinal + 1 for operators, 0 for everything else
+    private byte[] codes;
+    private int[] starts;
+    private int[] lengths;
+    // symbol id + 1 for identifiers, 0 for everything else
+    private int[] symbols;
+    private int size;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, null, INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(CharSequence source, SymbolTable symbolTable) {
+        this(source, symbolTable, INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(CharSequence source, SymbolTable symbolTable, int capacity) {
+        this.source = source;
+        this.symbolTable = symbolTable;
+        this.kinds = new byte[Math.max(capacity, 1)];
+        this.codes = new byte[kinds.length];
+        this.starts = new int[kinds.length];
+        this.lengths = new int[kinds.length];
+        this.symbols = new int[kinds.length];
+        this.size = 0;
+    }
+
+    // keyword is only kept for Keyword tokens and operator for all others,
+    // symbol is an id from the buffer's symbol table, -1 for none
+    public void add(LexicalScanner.Type type, Keyword keyword, Operator operator, int start, int length, int symbol) {
+        if (size == kinds.length) {
+            grow(size + 1);
+        }
+        kinds[size] = (byte) type.ordinal();
+        if (type == LexicalScanner.Type.Keyword) {
+            codes[size] = (byte) (keyword == null ? 0 : keyword.ordinal() + 1);
+        } else {
+            codes[size] = (byte) (operator == null ? 0 : operator.ordinal() + 1);
+        }
+        starts[size] = start;
+        lengths[size] = length;
+        symbols[size] = symbol + 1;
+        size++;
+    }
+
+    // append tokens [from, to) of another buffer over the same source and symbol table
+    public void addAll(TokenBuffer other, int from, int to) {
+        int count = to - from;
+        if (size + count > kinds.length) {
+            grow(size + count);
+        }
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.codes, from, codes, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        System.arraycopy(other.symbols, from, symbols, size, count);
+        size += count;
+    }
+
+    // replace tokens [from, to) with tokens [otherFrom, otherTo) of another buffer over the same source and symbols
+    public void replace(int from, int to, TokenBuffer other, int otherFrom, int otherTo) {
+        int count = otherTo - otherFrom;
+        int newSize = size - (to - from) + count;
+        if (newSize > kinds.length) {
+            grow(newSize);
+        }
+        int tail = size - to;
+        System.arraycopy(kinds, to, kinds, from + count, tail);
+        System.arraycopy(codes, to, codes, from + count, tail);
+        System.arraycopy(starts, to, starts, from + count, tail);
+        System.arraycopy(lengths, to, lengths, from + count, tail);
+        System.arraycopy(symbols, to, symbols, from + count, tail);
+        System.arraycopy(other.kinds, otherFrom, kinds, from, count);
+        System.arraycopy(other.codes, otherFrom, codes, from, count);
+        System.arraycopy(other.starts, otherFrom, starts, from, count);
+        System.arraycopy(other.lengths, otherFrom, lengths, from, count);
+        System.arraycopy(other.symbols, otherFrom, symbols, from, count);
+        size = newSize;
+    }
+
+    // same kind, keyword or operator, start and length as token otherIndex of other
+    public boolean matches(int index, TokenBuffer other, int otherIndex) {
+        return kinds[index] == other.kinds[otherIndex] && codes[index] == other.codes[otherIndex]
+                && starts[index] == other.starts[otherIndex] && lengths[index] == other.lengths[otherIndex];
+    }
+
+    // move the start offsets of the tokens from index on by delta chars
+    public void shift(int from, int delta) {
+        for (int i = from; i < size; i++) {
+            starts[i] += delta;
+        }
+    }
+
+    // number of tokens starting before offset, starts are in ascending order
+    public int countBefore(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, kinds.length + (kinds.length >> 1) + 1);
+        kinds = Arrays.copyOf(kinds, capacity);
+        codes = Arrays.copyOf(codes, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public LexicalScanner.Type getType(int index) {
+        return TYPES[kinds[index]];
+    }
+
+    public Keyword getKeyword(int index) {
+        return codes[index] == 0 || kinds[index] != KEYWORD_KIND ? null : KEYWORDS[codes[index] - 1];
+    }
+
+    public Operator getOperator(int index) {
+        return codes[index] == 0 || kinds[index] == KEYWORD_KIND ? null : OPERATORS[codes[index] - 1];
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    // id in getSymbolTable(), -1 if the token is not an interned identifier
+    public int getSymbol(int index) {
+        return symbols[index] - 1;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    // adds the number of tokens of each kind to counts, indexed by LexicalScanner.Type ordinal
+    public void countTypes(long[] counts) {
+        for (int i = 0; i < size; i++) {
+            counts[kinds[i]]++;
+        }
+    }
+
+    // read-only view of the lexeme, nothing is copied
+    public CharSequence getLexeme(int index) {
+        return CharBuffer.wrap(source, starts[index], starts[index] + lengths[index]);
+    }
+
+    // identifiers share the String of their symbol, other values are copied out of the source
+    public String getValue(int index) {
+        if (symbols[index] != 0) {
+            return symbolTable.name(symbols[index] - 1);
+        }
+        return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    public Token getToken(int index) {
+        return new Token(getType(index), getValue(index), getKeyword(index), getOperator(index), starts[index],
+                symbols[index] - 1);
+    }
+
+    // Token objects are created on each get
+    public List<Token> asList() {
+        return new TokenList();
+    }
+
+    private class TokenList extends AbstractList<Token> implements RandomAccess {
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return getToken(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
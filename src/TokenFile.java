@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// binary token stream, read straight from the mapped file without a decoding pass
+//
+// layout, little endian, version 2:
+//   header (32 bytes): int magic "VCTK", short version, short 0, int count, int strings, long string bytes,
+//                      int flags (MISSING_QUOTE), int 0
+//   byte kinds[count] (LexicalScanner.Type ordinal)
+//   byte codes[count] (Keyword ordinal + 1 for keywords, Operator ordinal + 1 for operators, 0 for neither)
+//   padding to 4 bytes
+//   int starts[count], int lengths[count] (chars in the source), int values[count] (string index)
+//   int string ends[strings], UTF-8 string bytes
+public final class TokenFile {
+    public static final int MAGIC = 'V' | 'C' << 8 | 'T' << 16 | 'K' << 24;
+    public static final int VERSION = 2;
+    // the scanner reported a string literal without its closing quote
+    public static final int MISSING_QUOTE = 1;
+
+    private static final LexicalScanner.Type[] TYPES = LexicalScanner.Type.values();
+    private static final Keyword[] KEYWORDS = Keyword.values();
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private final int count;
+    private final int flags;
+    private final ByteBuffer kinds;
+    private final ByteBuffer codes;
+    private final IntBuffer starts;
+    private final IntBuffer lengths;
+    private final IntBuffer values;
+    private final IntBuffer stringEnds;
+    private final ByteBuffer stringBytes;
+
+    private TokenFile(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = BinaryFormat.readHeader(channel, MAGIC, VERSION, path);
+        count = header.getInt(8);
+        int strings = header.getInt(12);
+        long stringSize = header.getLong(16);
+        flags = header.getInt(24);
+
+        long position = BinaryFormat.HEADER_SIZE;
+        kinds = BinaryFormat.map(channel, position, count);
+        position += count;
+        codes = BinaryFormat.map(channel, position, count);
+        position = BinaryFormat.align(position + count);
+        starts = BinaryFormat.map(channel, position, 4L * count).asIntBuffer();
+        position += 4L * count;
+        lengths = BinaryFormat.map(channel, position, 4L * count).asIntBuffer();
+        position += 4L * count;
+        values = BinaryFormat.map(channel, position, 4L * count).asIntBuffer();
+        position += 4L * count;
+        stringEnds = BinaryFormat.map(channel, position, 4L * strings).asIntBuffer();
+        position += 4L * strings;
+        stringBytes = BinaryFormat.map(channel, position, stringSize);
+    }
+
+    // the mappings stay valid after the file is closed
+    public static TokenFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new TokenFile(channel, path);
+        }
+    }
+
+    public static void write(TokenBuffer tokens, Path path) throws IOException {
+        write(tokens, 0, path);
+    }
+
+    public static void write(TokenBuffer tokens, int flags, Path path) throws IOException {
+        write(tokens, flags, new BinaryFormat.Output(path));
+    }
+
+    // the same bytes as the file, the channel is closed afterwards
+    public static void write(TokenBuffer tokens, int flags, WritableByteChannel channel) throws IOException {
+        write(tokens, flags, new BinaryFormat.Output(channel));
+    }
+
+    private static void write(TokenBuffer tokens, int flags, BinaryFormat.Output output) throws IOException {
+        int count = tokens.size();
+        BinaryFormat.Strings strings = new BinaryFormat.Strings();
+        int[] valueIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            valueIds[i] = strings.add(tokens.getValue(i));
+        }
+        try (BinaryFormat.Output out = output) {
+            out.putInt(MAGIC);
+            out.putShort(VERSION);
+            out.putShort(0);
+            out.putInt(count);
+            out.putInt(strings.count());
+            out.putLong(strings.byteSize());
+            out.putInt(flags);
+            out.putInt(0);
+            for (int i = 0; i < count; i++) {
+                out.putByte(tokens.getType(i).ordinal());
+            }
+            for (int i = 0; i < count; i++) {
+                Keyword keyword = tokens.getKeyword(i);
+                Operator operator = tokens.getOperator(i);
+                out.putByte(keyword != null ? keyword.ordinal() + 1 : operator != null ? operator.ordinal() + 1 : 0);
+            }
+            out.align();
+            for (int i = 0; i < count; i++) {
+                out.putInt(tokens.getStart(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.putInt(tokens.getLength(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.putInt(valueIds[i]);
+            }
+            strings.writeEnds(out);
+            strings.writeBytes(out);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public LexicalScanner.Type getType(int index) {
+        return TYPES[kinds.get(index)];
+    }
+
+    public Keyword getKeyword(int index) {
+        int code = codes.get(index);
+        return code == 0 || getType(index) != LexicalScanner.Type.Keyword ? null : KEYWORDS[code - 1];
+    }
+
+    public Operator getOperator(int index) {
+        int code = codes.get(index);
+        return code == 0 || getType(index) == LexicalScanner.Type.Keyword ? null : OPERATORS[code - 1];
+    }
+
+    public int getStart(int index) {
+        return starts.get(index);
+    }
+
+    public int getLength(int index) {
+        return lengths.get(index);
+    }
+
+    public String getValue(int index) {
+        return BinaryFormat.string(stringEnds, stringBytes, values.get(index));
+    }
+
+    public Token getToken(int index) {
+        return new Token(getType(index), getValue(index), getKeyword(index), getOperator(index), getStart(index), -1);
+    }
+}
@@ -0,0 +1,192 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// lexer on a thread of its own feeding the parser: tokens go through a bounded single-producer single-consumer
+// ring in batches, so scanning and parsing overlap and at most CAPACITY batches are waiting at any time
+//
+//   TokenPipe pipe = TokenPipe.start(controller);
+//   SyntaxTree tree = new Parser(new TokenStream(pipe)).parseTree();
+//
+// the ring slots are written only by the lexer and read only by the parser, tail and head publish them
+// with lazySet (a release store) and are read as volatiles, no locks or CAS
+public final class TokenPipe implements Iterator<Token>, AutoCloseable {
+    static final int BATCH = 256;
+    static final int CAPACITY = 64;
+    // no more batches, the lexer has finished or failed
+    private static final Token[] END = new Token[0];
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 20_000;
+
+    private final Token[][] ring = new Token[CAPACITY][];
+    // next slot the lexer fills, written by the lexer only
+    private final AtomicLong tail = new AtomicLong();
+    // next slot the parser takes, written by the parser only
+    private final AtomicLong head = new AtomicLong();
+    private volatile Throwable failure;
+    private volatile boolean closed;
+    // measured on the lexer thread, set before END is published and read after it is taken
+    private long scanNanos;
+    private long allocated;
+    private long waitNanos;
+
+    // parser side
+    private Token[] batch = new Token[0];
+    private int index;
+    private boolean ended;
+
+    private TokenPipe() {
+    }
+
+    // starts scanning on a new daemon thread, the controller must not be used by anyone else until the end
+    public static TokenPipe start(Controller lexer) {
+        return start(lexer, null, -1);
+    }
+
+    // the same, and the scan of the named source of the given size is recorded as a ScanEvents.FileScan on the
+    // lexer thread
+    public static TokenPipe start(Controller lexer, String sourceName, long bytes) {
+        TokenPipe pipe = new TokenPipe();
+        Iterator<Token> tokens = lexer.scanningIterator();
+        Thread thread = new Thread(() -> pipe.produce(tokens, lexer, sourceName, bytes), "lexer");
+        thread.setDaemon(true);
+        thread.start();
+        return pipe;
+    }
+
+    private void produce(Iterator<Token> tokens, Controller lexer, String sourceName, long bytes) {
+        long start = System.nanoTime();
+        long allocationMark = ScanMetrics.allocatedByThisThread();
+        ScanEvents.FileScan event = sourceName == null ? null : ScanEvents.fileScan();
+        try {
+            Token[] next = new Token[BATCH];
+            int count = 0;
+            while (!closed && tokens.hasNext()) {
+                next[count++] = tokens.next();
+                if (count == BATCH) {
+                    publish(next);
+                    next = new Token[BATCH];
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                Token[] last = new Token[count];
+                System.arraycopy(next, 0, last, 0, count);
+                publish(last);
+            }
+            if (event != null && !closed) {
+                event.finish(sourceName, bytes, lexer.getResult());
+            }
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        } finally {
+            scanNanos = System.nanoTime() - start - waitNanos;
+            allocated = ScanMetrics.allocatedByThisThread() - allocationMark;
+            publish(END);
+        }
+    }
+
+    // waits while the ring is full, this is the backpressure on the lexer, the time waited is not scan time
+    private void publish(Token[] tokens) {
+        long slot = tail.get();
+        if (slot - head.get() == CAPACITY) {
+            long waitStart = System.nanoTime();
+            for (int waits = 0; slot - head.get() == CAPACITY; waits++) {
+                if (closed) {
+                    return;
+                }
+                pause(waits);
+            }
+            waitNanos += System.nanoTime() - waitStart;
+        }
+        ring[(int) slot & (CAPACITY - 1)] = tokens;
+        tail.lazySet(slot + 1);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index == batch.length) {
+            if (ended) {
+                return false;
+            }
+            take();
+        }
+        return true;
+    }
+
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch[index++];
+    }
+
+    private void take() {
+        long slot = head.get();
+        for (int waits = 0; slot == tail.get(); waits++) {
+            pause(waits);
+        }
+        int i = (int) slot & (CAPACITY - 1);
+        Token[] tokens = ring[i];
+        ring[i] = null;
+        head.lazySet(slot + 1);
+        if (tokens == END) {
+            ended = true;
+            Throwable error = failure;
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error != null) {
+                throw (Error) error;
+            }
+        }
+        batch = tokens;
+        index = 0;
+    }
+
+    // skips the tokens the parser did not take and waits for the lexer to stop, after this the lexer's
+    // measurements can be read
+    public void awaitEnd() {
+        while (hasNext()) {
+            next();
+        }
+    }
+
+    // time the lexer thread spent scanning, not counting waits on a full ring, once awaitEnd() has returned
+    public long getScanNanos() {
+        checkEnded();
+        return scanNanos;
+    }
+
+    // bytes allocated on the lexer thread, 0 where the JVM does not count them, once awaitEnd() has returned
+    public long getAllocatedBytes() {
+        checkEnded();
+        return allocated;
+    }
+
+    private void checkEnded() {
+        if (!ended) {
+            throw new IllegalStateException("The lexer has not finished");
+        }
+    }
+
+    // spin first, most waits are short, then yield the core and finally sleep briefly
+    private static void pause(int waits) {
+        if (waits < SPINS) {
+            return;
+        }
+        if (waits < 2 * SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    // stops the lexer early if the parser gives up before the end of the input
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
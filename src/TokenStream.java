@@ -0,0 +1,85 @@
+import java.util.Iterator;
+import java.util.List;
+
+// cursor over scanned tokens, reads past the end return EOF
+public class TokenStream {
+    private static final int INITIAL_WINDOW = 16;
+
+    private final Iterator<Token> source;
+    private final Token eof;
+    // lookahead ring, slot i holds token cursor + i
+    private Token[] window;
+    private int head;
+    private int buffered;
+    private int cursor;
+
+    public TokenStream(List<Token> tokens) {
+        this(tokens.iterator());
+    }
+
+    // tokens are pulled from the source only as far as the parser looks ahead
+    public TokenStream(Iterator<Token> source) {
+        this.source = source;
+        this.eof = new Token(LexicalScanner.Type.EOF, "");
+        this.window = new Token[INITIAL_WINDOW];
+        this.head = 0;
+        this.buffered = 0;
+        this.cursor = 0;
+    }
+
+    // k-th token ahead of the cursor, 0 is the next token
+    public Token peek(int k) {
+        if (!fill(k + 1)) {
+            return eof;
+        }
+        return window[(head + k) & (window.length - 1)];
+    }
+
+    public Token next() {
+        if (!fill(1)) {
+            return eof;
+        }
+        Token token = window[head];
+        window[head] = null;
+        head = (head + 1) & (window.length - 1);
+        buffered--;
+        cursor++;
+        return token;
+    }
+
+    // make sure count tokens are buffered, false if the source runs out first
+    private boolean fill(int count) {
+        if (count > window.length) {
+            grow(count);
+        }
+        while (buffered < count) {
+            if (!source.hasNext()) {
+                return false;
+            }
+            window[(head + buffered) & (window.length - 1)] = source.next();
+            buffered++;
+        }
+        return true;
+    }
+
+    private void grow(int count) {
+        int capacity = window.length;
+        while (capacity < count) {
+            capacity <<= 1;
+        }
+        Token[] grown = new Token[capacity];
+        for (int i = 0; i < buffered; i++) {
+            grown[i] = window[(head + i) & (window.length - 1)];
+        }
+        window = grown;
+        head = 0;
+    }
+
+    public int position() {
+        return cursor;
+    }
+
+    public boolean isAtEnd() {
+        return !fill(1);
+    }
+}
@@ -0,0 +1,252 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// chars of well-formed UTF-8 bytes without decoding them: where the multi-byte chars are is recorded once, char
+// indexes are turned into byte indexes through those positions and text is only decoded when it is asked for
+//
+// a Controller given one scans the bytes themselves, see bytesAsChars(), so a mostly ASCII source is read at one
+// byte a char and never decoded as a whole
+public final class Utf8Sequence implements CharSequence {
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ByteBuffer bytes;
+    private final int length;
+    // byte and char index of each multi-byte char, ascending
+    private final int[] byteStarts;
+    private final int[] charStarts;
+    private final int count;
+
+    private Utf8Sequence(ByteBuffer bytes, int length, int[] byteStarts, int[] charStarts, int count) {
+        this.bytes = bytes;
+        this.length = length;
+        this.byteStarts = byteStarts;
+        this.charStarts = charStarts;
+        this.count = count;
+    }
+
+    // the bytes from position to limit, null if they are not well-formed UTF-8 and have to go through a decoder
+    // that replaces the malformed parts, ASCII is skipped eight bytes at a time
+    public static Utf8Sequence of(ByteBuffer utf8) {
+        ByteBuffer bytes = utf8.slice();
+        int size = bytes.limit();
+        int[] byteStarts = new int[INITIAL_CAPACITY];
+        int[] charStarts = new int[INITIAL_CAPACITY];
+        int count = 0;
+        int chars = 0;
+        int i = 0;
+        while (i < size) {
+            if (i + Long.BYTES <= size && (bytes.getLong(i) & HIGH_BITS) == 0) {
+                i += Long.BYTES;
+                chars += Long.BYTES;
+                continue;
+            }
+            if (bytes.get(i) >= 0) {
+                i++;
+                chars++;
+                continue;
+            }
+            int sequence = sequenceLength(bytes, i, size);
+            if (sequence < 0) {
+                return null;
+            }
+            if (count == byteStarts.length) {
+                byteStarts = Arrays.copyOf(byteStarts, count * 2);
+                charStarts = Arrays.copyOf(charStarts, count * 2);
+            }
+            byteStarts[count] = i;
+            charStarts[count] = chars;
+            count++;
+            i += sequence;
+            chars += sequence == 4 ? 2 : 1;
+        }
+        return new Utf8Sequence(bytes, chars, byteStarts, charStarts, count);
+    }
+
+    // bytes in the well-formed char starting at i, -1 if there is none (RFC 3629: no overlong forms, no
+    // surrogates, nothing above U+10FFFF)
+    private static int sequenceLength(ByteBuffer bytes, int i, int size) {
+        int lead = bytes.get(i) & 0xFF;
+        int length;
+        int low = 0x80;
+        int high = 0xBF;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            length = 2;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            length = 3;
+            low = lead == 0xE0 ? 0xA0 : 0x80;
+            high = lead == 0xED ? 0x9F : 0xBF;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            length = 4;
+            low = lead == 0xF0 ? 0x90 : 0x80;
+            high = lead == 0xF4 ? 0x8F : 0xBF;
+        } else {
+            return -1;
+        }
+        if (i + length > size) {
+            return -1;
+        }
+        // the second byte has the tighter range, the others are any continuation byte
+        int second = bytes.get(i + 1) & 0xFF;
+        if (second < low || second > high) {
+            return -1;
+        }
+        for (int j = 2; j < length; j++) {
+            if ((bytes.get(i + j) & 0xC0) != 0x80) {
+                return -1;
+            }
+        }
+        return length;
+    }
+
+    // bytes of the multi-byte char k
+    private int byteLength(int k) {
+        int lead = bytes.get(byteStarts[k]) & 0xFF;
+        return lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+    }
+
+    // chars of the multi-byte char k, a surrogate pair for four bytes
+    private int charLength(int k) {
+        return byteLength(k) == 4 ? 2 : 1;
+    }
+
+    // last k with starts[k] < index, -1 if there is none
+    private int before(int[] starts, int index) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    // bytes minus chars up to the end of the multi-byte char k, 0 before the first
+    private int shift(int k) {
+        return k < 0 ? 0 : byteStarts[k] + byteLength(k) - charStarts[k] - charLength(k);
+    }
+
+    // chars before byte indexes that mostly go up, as a scanner adds its tokens: the multi-byte chars passed
+    // since the last one are stepped over instead of searched for
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    // byte index of the char at index, -1 for the second half of a surrogate pair
+    int byteIndex(int index) {
+        int k = before(charStarts, index);
+        if (k < 0) {
+            return index;
+        }
+        int after = charStarts[k] + charLength(k);
+        return index < after ? -1 : byteStarts[k] + byteLength(k) + index - after;
+    }
+
+    // the bytes as one char each, byte index = char index: ASCII comes out as itself and the bytes of a
+    // multi-byte char as chars from 0xFF80 up, which the scanner does not take into any token but a string literal
+    CharSequence bytesAsChars() {
+        return new SourceFile.AsciiSequence(bytes, 0, bytes.limit());
+    }
+
+    // no multi-byte chars, char and byte indexes are the same
+    public boolean isAscii() {
+        return count == 0;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        int k = before(charStarts, index + 1);
+        if (k < 0) {
+            return (char) bytes.get(index);
+        }
+        int after = charStarts[k] + charLength(k);
+        if (index >= after) {
+            return (char) bytes.get(byteStarts[k] + byteLength(k) + index - after);
+        }
+        int codePoint = codePoint(k);
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return (char) codePoint;
+        }
+        return index == charStarts[k] ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+    }
+
+    private int codePoint(int k) {
+        int i = byteStarts[k];
+        int length = byteLength(k);
+        int codePoint = bytes.get(i) & (0xFF >>> (length + 1));
+        for (int j = 1; j < length; j++) {
+            codePoint = codePoint << 6 | bytes.get(i + j) & 0x3F;
+        }
+        return codePoint;
+    }
+
+    // decoded now, a surrogate pair split by start or end is built a char at a time
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        int from = byteIndex(start);
+        int to = end == length ? bytes.limit() : byteIndex(end);
+        if (from < 0 || to < 0) {
+            StringBuilder sb = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                sb.append(charAt(i));
+            }
+            return sb.toString();
+        }
+        return decode(from, to);
+    }
+
+    private String decode(int from, int to) {
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] copy = new byte[to - from];
+        ByteBuffer view = bytes.duplicate();
+        view.position(from);
+        view.get(copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return decode(0, bytes.limit());
+    }
+
+    final class Cursor {
+        // first multi-byte char at or after the last byte index, -1 before the first, and shift(next - 1)
+        private int next = -1;
+        private int shift;
+
+        private Cursor() {
+        }
+
+        // the byte index must not be inside a multi-byte char
+        int charIndex(int byteIndex) {
+            if (next < 0 || next > 0 && byteStarts[next - 1] >= byteIndex) {
+                // a scanner may start anywhere, after that moving back is rare enough to search
+                next = before(byteStarts, byteIndex) + 1;
+                shift = shift(next - 1);
+            }
+            while (next < count && byteStarts[next] < byteIndex) {
+                shift += byteLength(next) - charLength(next);
+                next++;
+            }
+            return byteIndex - shift;
+        }
+    }
+}